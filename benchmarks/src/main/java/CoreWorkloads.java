@@ -0,0 +1,141 @@
+import benchmark.Workloads;
+
+import java.util.SplittableRandom;
+
+/**
+ * Implementation of {@link Workloads} over the game sources.
+ */
+public class CoreWorkloads implements Workloads {
+    /**
+     * Positions of the solver suite, as columns played from the empty board. Each takes tens to
+     * hundreds of milliseconds to solve with a cold 16 MB table.
+     */
+    static final String[] SUITE = {
+            "13611375752241224",
+            "335672656511711",
+            "1174764426346",
+            "63143176663252",
+            "1156215524164",
+            "545741355462",
+    };
+
+    private final int[] drawnGame;
+    private final Position[] positions;
+    private final ConnectFour midGame;
+    private final Position[] suite;
+    private final TranspositionTable table = new TranspositionTable(1 << 20);
+    private final Solver solver = new Solver(Solver.FULL_DEPTH, table);
+
+    public CoreWorkloads(){
+        drawnGame = findDrawnGame(new SplittableRandom(42));
+        positions = new Position[drawnGame.length];
+        Position position = Position.create();
+        for(int i = 0; i < drawnGame.length; i++){
+            positions[i] = position.copy();
+            position.play(drawnGame[i] - 1);
+        }
+
+        midGame = new ConnectFour("Lisa", "Luna");
+        for(int i = 0; i < drawnGame.length / 2; i++){
+            midGame.makeMove(drawnGame[i]);
+        }
+
+        suite = new Position[SUITE.length];
+        for(int i = 0; i < SUITE.length; i++){
+            suite[i] = Position.create();
+            for(char c : SUITE[i].toCharArray()){
+                suite[i].play(c - '1');
+            }
+        }
+    }
+
+    @Override
+    public int playFullGame(){
+        ConnectFour game = new ConnectFour("Lisa", "Luna");
+        for(int column : drawnGame){
+            game.makeMove(column);
+        }
+        return game.getStatus().ordinal();
+    }
+
+    @Override
+    public int fullGameMoves(){
+        return drawnGame.length;
+    }
+
+    @Override
+    public int checkWins(){
+        int wins = 0;
+        for(int i = 0; i < positions.length; i++){
+            if(positions[i].isWinningMove(drawnGame[i] - 1)){
+                wins++;
+            }
+        }
+        return wins;
+    }
+
+    @Override
+    public int winChecks(){
+        return positions.length;
+    }
+
+    @Override
+    public int[][] board(){
+        return midGame.getBoard();
+    }
+
+    @Override
+    public int playRandomGame(SplittableRandom random){
+        ConnectFour game = new ConnectFour("Lisa", "Luna");
+        int[] heights = new int[Position.WIDTH];
+        int moves = 0;
+        while(game.getStatus() == ConnectFour.Status.PLAYING){
+            int col = random.nextInt(Position.WIDTH);
+            if(heights[col] == Position.HEIGHT){
+                continue;
+            }
+            heights[col]++;
+            game.makeMove(col + 1);
+            moves++;
+        }
+        return moves;
+    }
+
+    @Override
+    public int suiteSize(){
+        return suite.length;
+    }
+
+    @Override
+    public void resetSolver(){
+        table.clear();
+    }
+
+    @Override
+    public long solve(int index){
+        return solver.solve(suite[index]).getNodes();
+    }
+
+    /**
+     * Play random games until one fills the board without a winner.
+     */
+    private static int[] findDrawnGame(SplittableRandom random){
+        int[] columns = new int[Position.WIDTH * Position.HEIGHT];
+        while(true){
+            Position position = Position.create();
+            boolean won = false;
+            while(!won && position.moves() < columns.length){
+                int col = random.nextInt(Position.WIDTH);
+                if(!position.canPlay(col)){
+                    continue;
+                }
+                won = position.isWinningMove(col);
+                columns[position.moves()] = col + 1;
+                position.play(col);
+            }
+            if(!won){
+                return columns;
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the moves of a game: makeMove, the win check, getBoard and whole random games.
+ * The prepared game fills the board without a winner, so it covers 42 moves and every height of every column.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class GameBenchmark {
+    /**
+     * Moves of the prepared game, see {@link Workloads#fullGameMoves()}.
+     */
+    private static final int FULL_GAME_MOVES = 42;
+
+    private Workloads workloads;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        workloads = Workloads.load();
+        if(workloads.fullGameMoves() != FULL_GAME_MOVES || workloads.winChecks() != FULL_GAME_MOVES){
+            throw new IllegalStateException("Operation counts no longer match the prepared game");
+        }
+        random = new SplittableRandom(7);
+    }
+
+    /**
+     * Cost of one makeMove, including creating the game, averaged over a full game.
+     */
+    @Benchmark
+    @OperationsPerInvocation(FULL_GAME_MOVES)
+    public int makeMove(){
+        return workloads.playFullGame();
+    }
+
+    /**
+     * Cost of one last-move win check, the work checkWinner does inside makeMove.
+     */
+    @Benchmark
+    @OperationsPerInvocation(FULL_GAME_MOVES)
+    public int checkWinner(){
+        return workloads.checkWins();
+    }
+
+    /**
+     * Cost of copying the board out of a game.
+     */
+    @Benchmark
+    public int[][] getBoard(){
+        return workloads.board();
+    }
+
+    /**
+     * Cost of a whole game of random moves through the public API.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int randomGame(){
+        return workloads.playRandomGame(random);
+    }
+}
@@ -0,0 +1,67 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Solver throughput on a fixed suite of midgame positions. Every solve starts from an empty
+ * transposition table, so the numbers do not depend on what earlier iterations left in it.
+ * The {@code nodes} counter reports the nodes visited per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class SolverBenchmark {
+    /**
+     * Index of the position of the suite, see CoreWorkloads.SUITE.
+     */
+    @Param({"0", "1", "2", "3", "4", "5"})
+    public int position;
+
+    private Workloads workloads;
+
+    /**
+     * Nodes visited, reported by JMH as a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes {
+        public long nodes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        workloads = Workloads.load();
+        if(position >= workloads.suiteSize()){
+            throw new IllegalStateException("No position " + position + " in the suite");
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTable(){
+        workloads.resetSolver();
+    }
+
+    @Benchmark
+    public long solve(Nodes counter){
+        long nodes = workloads.solve(position);
+        counter.nodes += nodes;
+        return nodes;
+    }
+}
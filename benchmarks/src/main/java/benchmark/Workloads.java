@@ -0,0 +1,79 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * Operations of the game core measured by the benchmarks.
+ * The game classes live in the default package, which code in a named package cannot import,
+ * and JMH refuses benchmarks in the default package. The operations are therefore implemented by
+ * the default-package class {@code CoreWorkloads} and reached through this interface, loaded once
+ * per trial. With a single implementation the calls are inlined, so they add nothing to the numbers.
+ */
+public interface Workloads {
+    /**
+     * Load the implementation compiled from the game sources.
+     * @return the workloads.
+     */
+    static Workloads load(){
+        try{
+            return (Workloads) Class.forName("CoreWorkloads").getDeclaredConstructor().newInstance();
+        }catch(ReflectiveOperationException e){
+            throw new IllegalStateException("Game sources are not on the classpath", e);
+        }
+    }
+
+    /**
+     * Play the prepared drawn game, every cell filled, on a new ConnectFour.
+     * @return ordinal of the final status.
+     */
+    int playFullGame();
+
+    /**
+     * Get the number of moves of the prepared drawn game.
+     * @return number of makeMove calls made by {@link #playFullGame()}.
+     */
+    int fullGameMoves();
+
+    /**
+     * Run the last-move win check on every position of the prepared game.
+     * @return number of winning moves found.
+     */
+    int checkWins();
+
+    /**
+     * Get the number of win checks made by {@link #checkWins()}.
+     * @return number of checks.
+     */
+    int winChecks();
+
+    /**
+     * Copy the board of a game in the middle of the prepared game.
+     * @return the copy.
+     */
+    int[][] board();
+
+    /**
+     * Play a random game until someone wins or the board is full.
+     * @param random source of the moves.
+     * @return number of moves played.
+     */
+    int playRandomGame(SplittableRandom random);
+
+    /**
+     * Get the number of positions of the solver suite.
+     * @return size of the suite.
+     */
+    int suiteSize();
+
+    /**
+     * Forget everything the solver learnt, so that the next solve starts cold.
+     */
+    void resetSolver();
+
+    /**
+     * Solve a position of the suite.
+     * @param index index of the position, [0, suiteSize()).
+     * @return number of nodes visited.
+     */
+    long solve(int index);
+}
@@ -0,0 +1,238 @@
+/**
+ * Bitboard representation of a position on a board where (rows + 1) * columns fits in 64 bits,
+ * which includes the standard 6 x 7 grid.
+ * The whole position is stored in two longs: the checkers of the player whose turn it is,
+ * and the mask of every occupied cell. Each column takes rows + 1 bits, so the cell at
+ * (row, col), with row 0 at the bottom, is bit {@code col * (rows + 1) + row}. The extra
+ * bit on top of every column is always empty, which keeps a full column from carrying
+ * into the next one when a move is added, and a line from wrapping into the next column.
+ */
+public final class BitboardPosition extends Position {
+    /**
+     * Checkers of the player whose turn it is.
+     */
+    private long current;
+    /**
+     * Every occupied cell.
+     */
+    private long mask;
+    /**
+     * Bits of every playable cell of the first column.
+     */
+    private final long firstColumn;
+    /**
+     * Bits per column, rows + 1.
+     */
+    private final int stride;
+
+    BitboardPosition(int height, int width, int connect){
+        super(height, width, connect);
+        this.firstColumn = (1L << height) - 1;
+        this.stride = height + 1;
+    }
+
+    @Override
+    public BitboardPosition copy(){
+        BitboardPosition copy = new BitboardPosition(height, width, connect);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    @Override
+    public void copyFrom(Position other){
+        BitboardPosition position = (BitboardPosition) other;
+        this.current = position.current;
+        this.mask = position.mask;
+        this.moves = position.moves;
+        this.zobrist = position.zobrist;
+        this.mirrorZobrist = position.mirrorZobrist;
+    }
+
+    @Override
+    public boolean canPlay(int col){
+        return (mask & topMask(col)) == 0;
+    }
+
+    @Override
+    public void play(int col){
+        long move = (mask + bottomMask(col)) & columnMask(col);
+        toggleZobrist(moves & 1, Long.numberOfTrailingZeros(move));
+        current ^= mask;
+        mask |= move;
+        moves++;
+    }
+
+    @Override
+    public void undo(int col){
+        long top = Long.highestOneBit(mask & columnMask(col));
+        mask ^= top;
+        current ^= mask;
+        moves--;
+        toggleZobrist(moves & 1, Long.numberOfTrailingZeros(top));
+    }
+
+    @Override
+    public boolean isWinningMove(int col){
+        long move = (mask + bottomMask(col)) & columnMask(col);
+        return connects(current | move, move);
+    }
+
+    @Override
+    public int height(int col){
+        return Long.bitCount(mask & columnMask(col));
+    }
+
+    /**
+     * Get the checkers of the player whose turn it is.
+     * @return bitboard of the player to move.
+     */
+    public long current(){
+        return current;
+    }
+
+    /**
+     * Get the checkers of the first player.
+     * @return bitboard of the player who moved first.
+     */
+    public long firstPlayerStones(){
+        return (moves & 1) == 0 ? current : current ^ mask;
+    }
+
+    /**
+     * Get every occupied cell.
+     * @return bitboard of all checkers.
+     */
+    public long mask(){
+        return mask;
+    }
+
+    /**
+     * Get a key identifying the position. Within each column, adding the occupied mask to the
+     * checkers of the player to move gives a number from which both can be read back, so each
+     * position gets a distinct key that fits in (rows + 1) * columns bits.
+     * @return unique key of the position.
+     */
+    @Override
+    public long key(){
+        return current + mask;
+    }
+
+    /**
+     * Get the key of the position mirrored left to right, computed by moving the bits of every
+     * column to the mirrored column.
+     * @return key of the mirrored position, see {@link #key()}.
+     */
+    @Override
+    public long mirrorKey(){
+        long key = key();
+        long columnBits = (firstColumn << 1) | 1;
+        long mirrored = 0;
+        for(int col = 0; col < width; col++){
+            long column = (key >>> col * stride) & columnBits;
+            mirrored |= column << (width - 1 - col) * stride;
+        }
+        return mirrored;
+    }
+
+    /**
+     * Rebuild a position from its key.
+     * @param rows number of rows of the board.
+     * @param columns number of columns of the board.
+     * @param connect length of a winning line.
+     * @param key key returned by {@link #key()} for a board of that size.
+     * @return the position with this key.
+     */
+    static BitboardPosition fromKey(int rows, int columns, int connect, long key){
+        BitboardPosition position = new BitboardPosition(rows, columns, connect);
+        for(int col = 0; col < columns; col++){
+            int shift = col * (rows + 1);
+            long value = (key >>> shift) & ((1L << (rows + 1)) - 1);
+            // a column of height h holding c gives (2^h - 1) + c with c < 2^h
+            int height = 63 - Long.numberOfLeadingZeros(value + 1);
+            long columnMask = (1L << height) - 1;
+            position.mask |= columnMask << shift;
+            position.current |= (value - columnMask) << shift;
+            position.moves += height;
+        }
+        long firstPlayer = position.firstPlayerStones();
+        for(long cells = position.mask; cells != 0; cells &= cells - 1){
+            int cell = Long.numberOfTrailingZeros(cells);
+            position.toggleZobrist((firstPlayer >>> cell & 1) != 0 ? 0 : 1, cell);
+        }
+        return position;
+    }
+
+    @Override
+    public int cellAt(int row, int col){
+        long bit = 1L << (col * stride + row);
+        if((mask & bit) == 0){
+            return 0;
+        }
+        boolean ownedByCurrent = (current & bit) != 0;
+        boolean firstPlayerToMove = (moves & 1) == 0;
+        return ownedByCurrent == firstPlayerToMove ? 1 : 2;
+    }
+
+    /**
+     * Check if a checker is part of a line of connect() checkers in any direction. For the standard
+     * line length the whole board is scanned instead, so the player must hold no other line.
+     * @param stones checkers of one player, including the checker at {@code move}.
+     * @param move bit of the checker to look at; unused for the standard line length.
+     * @return true if the checker is part of a winning line, or for the standard line length if
+     * the player has any line.
+     */
+    boolean connects(long stones, long move){
+        if(connect == 4){
+            return hasFour(stones, 1) || hasFour(stones, stride) || hasFour(stones, stride - 1) || hasFour(stones, stride + 1);
+        }
+        return run(stones, move, 1) >= connect                 // vertical
+                || run(stones, move, stride) >= connect        // horizontal
+                || run(stones, move, stride - 1) >= connect    // diagonal down
+                || run(stones, move, stride + 1) >= connect;   // diagonal up
+    }
+
+    /**
+     * Check for four in a row along one direction anywhere on the board, with two shifts instead of
+     * a walk. Used for the standard line length, where the player's other checkers hold no line yet.
+     */
+    private static boolean hasFour(long stones, int shift){
+        long pairs = stones & (stones >>> shift);
+        return (pairs & (pairs >>> 2 * shift)) != 0;
+    }
+
+    /**
+     * Count the consecutive checkers through a cell along one direction.
+     * The empty row on top of every column stops a run from wrapping into the next column.
+     */
+    private static int run(long stones, long move, int shift){
+        int count = 1;
+        for(long bit = move << shift; (stones & bit) != 0; bit <<= shift){
+            count++;
+        }
+        for(long bit = move >>> shift; (stones & bit) != 0; bit >>>= shift){
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Bit of the bottom cell of a column.
+     */
+    long bottomMask(int col){
+        return 1L << (col * stride);
+    }
+
+    /**
+     * Bit of the top playable cell of a column.
+     */
+    long topMask(int col){
+        return 1L << (height - 1 + col * stride);
+    }
+
+    /**
+     * Bits of every playable cell of a column.
+     */
+    long columnMask(int col){
+        return firstColumn << (col * stride);
+    }
+}
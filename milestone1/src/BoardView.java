@@ -0,0 +1,58 @@
+/**
+ * Read-only view of the board of a game. Reading it copies nothing and allocates nothing: it reads
+ * the live game, so it always shows the latest move. Cells use the same coordinates and values as
+ * {@link ConnectFour#getBoard()}: row 0 is the top row, column 0 the leftmost column, and a cell
+ * holds 0 when empty, otherwise the id of the player owning it.
+ * Example:
+ * <pre>
+ *         BoardView view = game.getBoardView();
+ *         int[] cells = new int[view.getRows() * view.getColumns()];
+ *         game.makeMove(4);
+ *         view.copyInto(cells);   //reuses the same buffer after every move
+ * </pre>
+ */
+public interface BoardView {
+    /**
+     * Get the number of rows of the board.
+     * @return number of rows.
+     */
+    int getRows();
+
+    /**
+     * Get the number of columns of the board.
+     * @return number of columns.
+     */
+    int getColumns();
+
+    /**
+     * Get the owner of a cell.
+     * @param row row index, 0 is the top row.
+     * @param col column index, 0 is the leftmost column.
+     * @return 0 for an empty cell, otherwise the id of the player owning it.
+     * @throws IndexOutOfBoundsException when the cell is outside the board.
+     */
+    int cellAt(int row, int col);
+
+    /**
+     * Get the number of checkers in a column.
+     * @param col column index, 0 is the leftmost column.
+     * @return height of the column.
+     * @throws IndexOutOfBoundsException when the column is outside the board.
+     */
+    int height(int col);
+
+    /**
+     * Copy the board into a buffer, row after row from the top: cell (row, col) goes to index
+     * {@code row * getColumns() + col}.
+     * @param dest buffer of at least getRows() * getColumns() elements.
+     * @throws IndexOutOfBoundsException when the buffer is too small.
+     */
+    void copyInto(int[] dest);
+
+    /**
+     * Copy the board into a two-dimensional buffer laid out like {@link ConnectFour#getBoard()}.
+     * @param dest buffer of at least getRows() rows of getColumns() elements.
+     * @throws IndexOutOfBoundsException when the buffer is too small.
+     */
+    void copyInto(int[][] dest);
+}
@@ -0,0 +1,125 @@
+import java.util.SplittableRandom;
+
+/**
+ * A computer player: given a position and a {@link Budget}, it chooses the column to play. Bots
+ * stop cooperatively: they poll the budget and answer with the best column found when it is
+ * exhausted or cancelled. Games call bots through a {@link BotRunner}, which starts the budget,
+ * enforces its time limit and checks the answer.
+ * Bots are not required to be thread-safe; code running games on several threads creates one
+ * bot per thread, see {@link Tournament}.
+ * Example:
+ * <pre>
+ *         Bot bot = Bot.mcts(10_000);
+ *         try (BotRunner runner = new BotRunner()) {
+ *             int col = runner.chooseColumn(bot, game.getPosition(), Budget.ofMillis(100));
+ *             game.makeMove(col + 1);
+ *         }
+ * </pre>
+ */
+@FunctionalInterface
+public interface Bot {
+    /**
+     * Choose the column to play.
+     * @param position position where neither player has won and the board is not full. It is a
+     * copy owned by the bot, which may modify it.
+     * @param budget budget of the move, already started.
+     * @return column index of a playable column, [0, width()).
+     */
+    int chooseColumn(Position position, Budget budget);
+
+    /**
+     * Create a bot playing random columns. It ignores the budget.
+     * @param seed seed of the random columns, the same seed gives the same columns.
+     * @return random bot.
+     */
+    static Bot random(long seed){
+        SplittableRandom random = new SplittableRandom(seed);
+        return (position, budget) -> {
+            int col;
+            do{
+                col = random.nextInt(position.width());
+            }while(!position.canPlay(col));
+            return col;
+        };
+    }
+
+    /**
+     * Create a bot looking one move ahead: it wins when it can, otherwise plays the column nearest
+     * the center that does not let the opponent win on the next move, which also blocks the
+     * opponent's single threats. It ignores the budget.
+     * @return heuristic bot.
+     */
+    static Bot heuristic(){
+        return (position, budget) -> {
+            int[] order = Solver.columnOrder(position.width());
+            for(int col : order){
+                if(position.canPlay(col) && position.isWinningMove(col)){
+                    return col;
+                }
+            }
+            Position child = position.copy();
+            int fallback = -1;
+            for(int col : order){
+                if(!position.canPlay(col)){
+                    continue;
+                }
+                if(fallback < 0){
+                    fallback = col;
+                }
+                child.copyFrom(position);
+                child.play(col);
+                if(!canWin(child)){
+                    return col;
+                }
+            }
+            return fallback;
+        };
+    }
+
+    /**
+     * Create a bot running {@link MonteCarloTreeSearch} on the calling thread. It honours the time
+     * and playout limits of the budget.
+     * @param playouts playouts per move when the budget has neither limit, and size of the tree, at least 1.
+     * @return Monte Carlo bot.
+     */
+    static Bot mcts(int playouts){
+        MonteCarloTreeSearch search = new MonteCarloTreeSearch(playouts);
+        return search::bestColumn;
+    }
+
+    /**
+     * Create a bot running {@link IterativeDeepening} with a 16 MB transposition table. It honours
+     * the time and node limits of the budget; with neither it solves the position.
+     * @return solver bot.
+     */
+    static Bot solver(){
+        return solver(null);
+    }
+
+    /**
+     * Create a bot playing from an opening book, then running {@link IterativeDeepening} with a
+     * 16 MB transposition table once the game leaves the book. It honours the time and node limits
+     * of the budget; with neither it solves the position.
+     * @param book opening book, or null to search from the first move.
+     * @return solver bot.
+     */
+    static Bot solver(OpeningBook book){
+        IterativeDeepening search = new IterativeDeepening();
+        return (position, budget) -> {
+            int col = book == null ? OpeningBook.NOT_FOUND : book.bestColumn(position);
+            return col != OpeningBook.NOT_FOUND ? col : search.search(position, budget).getColumn() - 1;
+        };
+    }
+
+    /**
+     * Tell whether the player to move has a winning move.
+     */
+    private static boolean canWin(Position position){
+        for(int col = 0; col < position.width(); col++){
+            if(position.canPlay(col) && position.isWinningMove(col)){
+                return true;
+            }
+        }
+        return false;
+    }
+}
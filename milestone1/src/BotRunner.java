@@ -0,0 +1,142 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs bots within their budgets, for game loops and servers. Every move gets a freshly started
+ * copy of the budget and a copy of the position. Without a time limit the bot runs on the calling
+ * thread and is trusted to honour its node or playout limit. With a time limit it runs on a pool
+ * thread: when the time runs out the budget is cancelled, and a bot still running after a grace
+ * period is interrupted and replaced by the first playable column in center-first order, so the
+ * caller never waits much longer than the budget. A bot that ignores both cancellation and
+ * interrupts keeps its pool thread busy and may be called again while still running.
+ * Example:
+ * <pre>
+ *         try (BotRunner runner = new BotRunner()) {
+ *             game.makeMove(runner.chooseColumn(Bot.solver(), game.getPosition(), Budget.ofMillis(100)) + 1);
+ *         }
+ * </pre>
+ */
+public class BotRunner implements AutoCloseable {
+    /**
+     * Time a bot gets after its budget is cancelled before it is interrupted.
+     */
+    public static final long DEFAULT_GRACE_NANOS = 50_000_000L;
+
+    private final ExecutorService pool = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "bot-runner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final long graceNanos;
+    private final LongAdder overruns = new LongAdder();
+
+    /**
+     * Create a runner with the default grace period.
+     */
+    public BotRunner(){
+        this(DEFAULT_GRACE_NANOS);
+    }
+
+    /**
+     * Create a runner.
+     * @param graceNanos time a bot gets after its budget is cancelled before it is interrupted, in nanoseconds.
+     * @throws IllegalArgumentException when graceNanos is negative.
+     */
+    public BotRunner(long graceNanos){
+        if(graceNanos < 0){
+            throw new IllegalArgumentException("Grace period must not be negative");
+        }
+        this.graceNanos = graceNanos;
+    }
+
+    /**
+     * Let a bot choose its move within a budget.
+     * @param bot bot to run.
+     * @param position position where neither player has won yet, it is not modified.
+     * @param budget limits of the move; a fresh copy is started for the bot.
+     * @return column index of a playable column, [0, width()).
+     * @throws IllegalStateException when the board is full, or the bot fails.
+     * @throws IllegalArgumentException when the bot answers with a column that cannot be played.
+     */
+    public int chooseColumn(Bot bot, Position position, Budget budget){
+        if(position.moves() == position.cells()){
+            throw new IllegalStateException("The board is full");
+        }
+        Budget account = budget.start();
+        int col;
+        if(!account.hasTimeLimit()){
+            try{
+                col = bot.chooseColumn(position.copy(), account);
+            }catch(RuntimeException e){
+                throw new IllegalStateException("Bot failed", e);
+            }
+        }else{
+            col = runTimed(bot, position, account);
+        }
+        if(col < 0 || col >= position.width() || !position.canPlay(col)){
+            throw new IllegalArgumentException("Bot chose column " + col + ", which cannot be played");
+        }
+        return col;
+    }
+
+    /**
+     * Run a bot on the pool until its deadline, then cancel it, then replace it.
+     */
+    private int runTimed(Bot bot, Position position, Budget account){
+        Position copy = position.copy();
+        Future<Integer> move = pool.submit(() -> bot.chooseColumn(copy, account));
+        try{
+            try{
+                return move.get(account.remainingNanos(), TimeUnit.NANOSECONDS);
+            }catch(TimeoutException e){
+                account.cancel();
+            }
+            try{
+                return move.get(graceNanos, TimeUnit.NANOSECONDS);
+            }catch(TimeoutException e){
+                move.cancel(true);
+                overruns.increment();
+                return fallback(position);
+            }
+        }catch(InterruptedException e){
+            move.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while the bot was thinking", e);
+        }catch(ExecutionException e){
+            throw new IllegalStateException("Bot failed", e.getCause());
+        }
+    }
+
+    /**
+     * First playable column in center-first order.
+     */
+    private static int fallback(Position position){
+        for(int col : Solver.columnOrder(position.width())){
+            if(position.canPlay(col)){
+                return col;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the number of moves where a bot ran past its grace period and was replaced.
+     * @return overrun count.
+     */
+    public long getOverruns(){
+        return overruns.sum();
+    }
+
+    /**
+     * Stop the threads of the runner, interrupting bots still running.
+     */
+    @Override
+    public void close(){
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,254 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compute a bot may spend on one move: a time limit, a number of search nodes, a number of
+ * playouts, or any combination. A budget is also the live account of one move: its clock starts
+ * when it is created, engines charge the nodes and playouts they spend, and whoever runs the bot
+ * can {@link #cancel()} it. Engines poll {@link #isExhausted()} and stop cooperatively, answering
+ * with the best move found so far; limits a bot does not understand are ignored by it.
+ * A budget may be charged by several threads of one engine at once. {@link #start()} gives a fresh
+ * account with the same limits for the next move.
+ * Example:
+ * <pre>
+ *         Budget budget = Budget.ofMillis(100).withNodes(5_000_000);
+ *         int col = bot.chooseColumn(game.getPosition(), budget.start());
+ * </pre>
+ */
+public final class Budget {
+    /**
+     * Value of a limit that is not set.
+     */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final long nanos;
+    private final long nodes;
+    private final long playouts;
+    /**
+     * {@link System#nanoTime()} at which the time runs out; far in the future without a time limit.
+     */
+    private final long deadline;
+    private final AtomicLong nodesSpent = new AtomicLong();
+    private final AtomicLong playoutsSpent = new AtomicLong();
+    private volatile boolean cancelled;
+
+    private Budget(long nanos, long nodes, long playouts){
+        if(nanos < 0 || nodes < 0 || playouts < 0){
+            throw new IllegalArgumentException("Budget limits must not be negative");
+        }
+        this.nanos = nanos;
+        this.nodes = nodes;
+        this.playouts = playouts;
+        long now = System.nanoTime();
+        this.deadline = now + Math.min(nanos, Long.MAX_VALUE >>> 2);
+    }
+
+    /**
+     * Create a budget without any limit.
+     * @return unlimited budget.
+     */
+    public static Budget unlimited(){
+        return new Budget(UNLIMITED, UNLIMITED, UNLIMITED);
+    }
+
+    /**
+     * Create a budget of time.
+     * @param nanos time for the move in nanoseconds.
+     * @return budget starting now.
+     * @throws IllegalArgumentException when nanos is negative.
+     */
+    public static Budget ofNanos(long nanos){
+        return new Budget(nanos, UNLIMITED, UNLIMITED);
+    }
+
+    /**
+     * Create a budget of time.
+     * @param millis time for the move in milliseconds.
+     * @return budget starting now.
+     * @throws IllegalArgumentException when millis is negative.
+     */
+    public static Budget ofMillis(long millis){
+        return ofNanos(Math.multiplyExact(millis, 1_000_000L));
+    }
+
+    /**
+     * Create a budget of search nodes, for searching engines.
+     * @param nodes number of positions the search may visit.
+     * @return budget starting now.
+     * @throws IllegalArgumentException when nodes is negative.
+     */
+    public static Budget ofNodes(long nodes){
+        return new Budget(UNLIMITED, nodes, UNLIMITED);
+    }
+
+    /**
+     * Create a budget of playouts, for Monte Carlo engines.
+     * @param playouts number of random games the engine may play.
+     * @return budget starting now.
+     * @throws IllegalArgumentException when playouts is negative.
+     */
+    public static Budget ofPlayouts(long playouts){
+        return new Budget(UNLIMITED, UNLIMITED, playouts);
+    }
+
+    /**
+     * Get a budget with the same limits and another time limit, starting now.
+     * @param nanos time for the move in nanoseconds.
+     * @return new budget.
+     */
+    public Budget withNanos(long nanos){
+        return new Budget(nanos, nodes, playouts);
+    }
+
+    /**
+     * Get a budget with the same limits and another node limit, starting now.
+     * @param nodes number of positions a search may visit.
+     * @return new budget.
+     */
+    public Budget withNodes(long nodes){
+        return new Budget(nanos, nodes, playouts);
+    }
+
+    /**
+     * Get a budget with the same limits and another playout limit, starting now.
+     * @param playouts number of random games an engine may play.
+     * @return new budget.
+     */
+    public Budget withPlayouts(long playouts){
+        return new Budget(nanos, nodes, playouts);
+    }
+
+    /**
+     * Get a fresh account with the same limits: its clock starts now and nothing is spent yet.
+     * @return new budget.
+     */
+    public Budget start(){
+        return new Budget(nanos, nodes, playouts);
+    }
+
+    /**
+     * Get the time limit.
+     * @return time for the move in nanoseconds, or {@link #UNLIMITED}.
+     */
+    public long getNanos(){
+        return nanos;
+    }
+
+    /**
+     * Get the node limit.
+     * @return number of positions a search may visit, or {@link #UNLIMITED}.
+     */
+    public long getNodes(){
+        return nodes;
+    }
+
+    /**
+     * Get the playout limit.
+     * @return number of random games an engine may play, or {@link #UNLIMITED}.
+     */
+    public long getPlayouts(){
+        return playouts;
+    }
+
+    /**
+     * Tell whether the budget has a time limit.
+     * @return true if the time is limited.
+     */
+    public boolean hasTimeLimit(){
+        return nanos != UNLIMITED;
+    }
+
+    /**
+     * Get the {@link System#nanoTime()} at which the time runs out, for engines taking a deadline.
+     * Without a time limit, it is decades away.
+     * @return deadline.
+     */
+    public long getDeadline(){
+        return deadline;
+    }
+
+    /**
+     * Get the time left.
+     * @return nanoseconds before the deadline, 0 if it passed.
+     */
+    public long remainingNanos(){
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    /**
+     * Charge nodes visited by a search.
+     * @param count number of positions visited since the last charge.
+     * @return true if the budget is now exhausted and the search should stop.
+     */
+    public boolean spendNodes(long count){
+        return nodesSpent.addAndGet(count) >= nodes || isExhausted();
+    }
+
+    /**
+     * Charge playouts played by a Monte Carlo engine.
+     * @param count number of playouts played since the last charge.
+     * @return true if the budget is now exhausted and the engine should stop.
+     */
+    public boolean spendPlayouts(long count){
+        return playoutsSpent.addAndGet(count) >= playouts || isExhausted();
+    }
+
+    /**
+     * Get the nodes charged so far.
+     * @return node count.
+     */
+    public long getNodesSpent(){
+        return nodesSpent.get();
+    }
+
+    /**
+     * Get the playouts charged so far.
+     * @return playout count.
+     */
+    public long getPlayoutsSpent(){
+        return playoutsSpent.get();
+    }
+
+    /**
+     * Ask the engine spending this budget to stop as soon as it can.
+     */
+    public void cancel(){
+        cancelled = true;
+    }
+
+    /**
+     * Tell whether the budget was cancelled.
+     * @return true after {@link #cancel()}.
+     */
+    public boolean isCancelled(){
+        return cancelled;
+    }
+
+    /**
+     * Tell whether the engine should stop: the budget was cancelled, the time ran out, or all the
+     * nodes or playouts were spent.
+     * @return true if nothing is left to spend.
+     */
+    public boolean isExhausted(){
+        return cancelled || System.nanoTime() - deadline >= 0
+                || nodesSpent.get() >= nodes || playoutsSpent.get() >= playouts;
+    }
+
+    /**
+     * Get a readable description of the limits.
+     * @return limits, for instance "100 ms, 5000000 nodes".
+     */
+    @Override
+    public String toString(){
+        StringBuilder limits = new StringBuilder();
+        if(nanos != UNLIMITED){
+            limits.append(nanos / 1_000_000.0).append(" ms");
+        }
+        if(nodes != UNLIMITED){
+            limits.append(limits.length() == 0 ? "" : ", ").append(nodes).append(" nodes");
+        }
+        if(playouts != UNLIMITED){
+            limits.append(limits.length() == 0 ? "" : ", ").append(playouts).append(" playouts");
+        }
+        return limits.length() == 0 ? "unlimited" : limits.toString();
+    }
+}
@@ -0,0 +1,389 @@
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe Connect 4 game, for servers where several clients may play the same game. The whole
+ * game is packed into one long held in an {@link AtomicLong}: the {@link BitboardPosition#key()} of
+ * the position in the low bits and the status in the top two bits. A move reads the state, computes
+ * the next one and installs it with a compare-and-set, starting over if another move got in first,
+ * so a game never sees half a move and no thread ever waits on a lock. Readers take a
+ * {@link Snapshot}, a single read of the state, so the board, status and player to move they see
+ * always belong together.
+ * Unlike {@link ConnectFour} there is no undo, since the state holds no history, and only boards
+ * where (rows + 1) * columns is at most 62 bits are supported, which includes the standard 6 x 7 grid.
+ * Example:
+ * <pre>
+ *         ConcurrentConnectFour game = new ConcurrentConnectFour("Lisa", "Luna");
+ *         game.makeMove(4);                       //from any thread
+ *         ConcurrentConnectFour.Snapshot snapshot = game.snapshot();
+ *         System.out.println(snapshot.getStatus() + " " + game.getPlayerName(snapshot.getCurrentPlayer()));
+ * </pre>
+ */
+public class ConcurrentConnectFour {
+    /**
+     * Position of the status in the state, above the position key.
+     */
+    private static final int STATUS_SHIFT = 62;
+    private static final long KEY_MASK = (1L << STATUS_SHIFT) - 1;
+    private static final ConnectFour.Status[] STATUSES = ConnectFour.Status.values();
+
+    /**
+     * Position key and status, see the class description.
+     */
+    private final AtomicLong state;
+    /**
+     * Empty board of the size of the game; only its bit helpers, which read no position, are used.
+     */
+    private final BitboardPosition shape;
+    private final String[] names;
+    /**
+     * Id of the game in flight recorder events, see {@link GameEvents}.
+     */
+    private final long id = GameEvents.nextGameId();
+
+    /**
+     * Create a game on the standard 6 x 7 board.
+     * @param playerName1 player 1's name.
+     * @param playerName2 player 2's name.
+     */
+    public ConcurrentConnectFour(String playerName1, String playerName2){
+        this(playerName1, playerName2, Position.HEIGHT, Position.WIDTH, Position.CONNECT);
+    }
+
+    /**
+     * Create a game on a board of another size.
+     * @param playerName1 player 1's name.
+     * @param playerName2 player 2's name.
+     * @param rows number of rows.
+     * @param columns number of columns.
+     * @param connect number of checkers in a line to win, at least 2 and at most the number of rows or columns.
+     * @throws IllegalArgumentException when the board size or line length is out of range, or
+     * (rows + 1) * columns is more than 62.
+     */
+    public ConcurrentConnectFour(String playerName1, String playerName2, int rows, int columns, int connect){
+        Position position = Position.create(rows, columns, connect);
+        if((rows + 1) * columns > STATUS_SHIFT){
+            throw new IllegalArgumentException("Board too large for a lock-free game: (rows + 1) * columns must be at most " + STATUS_SHIFT);
+        }
+        this.shape = (BitboardPosition) position;
+        this.names = new String[]{playerName1, playerName2};
+        this.state = new AtomicLong(pack(0, ConnectFour.Status.PLAYING));
+
+        GameEvents.GameCreated event = new GameEvents.GameCreated();
+        if(event.shouldCommit()){
+            event.gameId = id;
+            event.player1 = playerName1;
+            event.player2 = playerName2;
+            event.rows = rows;
+            event.columns = columns;
+            event.connect = connect;
+            event.commit();
+        }
+    }
+
+    /**
+     * Drop a checker of the current player into a column.
+     * @param column column, counted from 1, [1, number of columns] inclusive.
+     * @return status of the game after the move.
+     * @throws IllegalArgumentException when the column is out of range or full.
+     * @throws IllegalStateException when the game is over.
+     */
+    public ConnectFour.Status makeMove(int column){
+        while(true){
+            long current = state.get();
+            long next = next(current, column);
+            if(state.compareAndSet(current, next)){
+                recordMove(next, column);
+                return status(next);
+            }
+        }
+    }
+
+    /**
+     * Drop a checker into a column only if the game is still in a given state, for clients that
+     * choose their move from a snapshot and must not play it on a game that moved on meanwhile.
+     * @param expected snapshot of this game the move was chosen from.
+     * @param column column, counted from 1, [1, number of columns] inclusive.
+     * @return true if the move was played, false if the game changed since the snapshot.
+     * @throws IllegalArgumentException when the snapshot is of another game, or the column is out of range or full.
+     * @throws IllegalStateException when the game is over.
+     */
+    public boolean makeMove(Snapshot expected, int column){
+        if(expected.game != this){
+            throw new IllegalArgumentException("Snapshot of another game");
+        }
+        long next = next(expected.state, column);
+        if(!state.compareAndSet(expected.state, next)){
+            return false;
+        }
+        recordMove(next, column);
+        return true;
+    }
+
+    /**
+     * Compute the state after a move.
+     * @throws IllegalArgumentException when the column is out of range or full.
+     * @throws IllegalStateException when the game is over.
+     */
+    private long next(long current, int column){
+        if(status(current) != ConnectFour.Status.PLAYING){
+            throw new IllegalStateException("The game is over");
+        }
+        int col = column - 1;
+        if(col < 0 || col >= shape.width()){
+            throw new IllegalArgumentException("Column is out of range. please enter column from 1 to " + shape.width());
+        }
+        long key = current & KEY_MASK;
+        long mask = mask(key);
+        if((mask & shape.topMask(col)) != 0){
+            throw new IllegalArgumentException("Column is full. Please choose another column");
+        }
+        long stones = key - mask;
+        long move = (mask + shape.bottomMask(col)) & shape.columnMask(col);
+        boolean won = shape.connects(stones | move, move);
+        // the opponent moves next: its checkers become the ones to move
+        long nextMask = mask | move;
+        long nextStones = stones ^ mask;
+        int moves = Long.bitCount(nextMask);
+        ConnectFour.Status status = won ? ((moves & 1) == 1 ? ConnectFour.Status.PLAYER_1_WINS : ConnectFour.Status.PLAYER_2_WINS)
+                : moves == shape.cells() ? ConnectFour.Status.DRAW : ConnectFour.Status.PLAYING;
+        return pack(nextStones + nextMask, status);
+    }
+
+    /**
+     * Emit the events of a move that was just installed.
+     */
+    private void recordMove(long next, int column){
+        GameEvents.Move event = new GameEvents.Move();
+        if(event.shouldCommit()){
+            int moves = Long.bitCount(mask(next & KEY_MASK));
+            event.gameId = id;
+            event.column = column;
+            event.player = (moves & 1) == 1 ? 1 : 2;
+            event.moves = moves;
+            // same key as ConnectFour's events; rebuilding the position costs only while recording
+            event.positionKey = BitboardPosition.fromKey(shape.height(), shape.width(), shape.connect(), next & KEY_MASK).zobrist();
+            event.commit();
+        }
+        ConnectFour.Status status = status(next);
+        if(status != ConnectFour.Status.PLAYING){
+            GameEvents.GameEnd end = new GameEvents.GameEnd();
+            if(end.shouldCommit()){
+                end.gameId = id;
+                end.status = status.name();
+                end.moves = Long.bitCount(mask(next & KEY_MASK));
+                end.commit();
+            }
+        }
+    }
+
+    /**
+     * Take a consistent view of the game.
+     * @return snapshot of the current state.
+     */
+    public Snapshot snapshot(){
+        return new Snapshot(this, state.get());
+    }
+
+    /**
+     * Get current game status.
+     * @return status.
+     */
+    public ConnectFour.Status getStatus(){
+        return status(state.get());
+    }
+
+    /**
+     * Get the board array.
+     * @return a copy of the board, rows from the top, 0 for an empty cell, otherwise the id of the player owning it.
+     */
+    public int[][] getBoard(){
+        return snapshot().getBoard();
+    }
+
+    /**
+     * Get the position of the board for search engines.
+     * @return a copy of the current position.
+     */
+    public Position getPosition(){
+        return snapshot().getPosition();
+    }
+
+    /**
+     * Get the name of a player.
+     * @param player id of the player, 1 or 2.
+     * @return name of the player.
+     */
+    public String getPlayerName(int player){
+        return names[player - 1];
+    }
+
+    /**
+     * Get the id of the game, unique within the JVM and carried by its flight recorder events.
+     * @return game id, counted from 1.
+     */
+    public long getId(){
+        return id;
+    }
+
+    /**
+     * Occupied cells of a position key: in each column, the key is the occupied cells plus the
+     * checkers of the player to move, so its highest bit plus one marks the height of the column.
+     */
+    private long mask(long key){
+        int stride = shape.height() + 1;
+        long columnBits = (1L << stride) - 1;
+        long mask = 0;
+        for(int col = 0; col < shape.width(); col++){
+            long value = (key >>> col * stride) & columnBits;
+            int height = 63 - Long.numberOfLeadingZeros(value + 1);
+            mask |= ((1L << height) - 1) << col * stride;
+        }
+        return mask;
+    }
+
+    private static long pack(long key, ConnectFour.Status status){
+        return key | (long) status.ordinal() << STATUS_SHIFT;
+    }
+
+    private static ConnectFour.Status status(long state){
+        return STATUSES[(int) (state >>> STATUS_SHIFT)];
+    }
+
+    /**
+     * Immutable view of a game at one moment. It reads the board like {@link ConnectFour#getBoardView()},
+     * rows counted from the top.
+     */
+    public static final class Snapshot implements BoardView {
+        private final ConcurrentConnectFour game;
+        private final long state;
+        private final long mask;
+        /**
+         * Checkers of the player to move.
+         */
+        private final long stones;
+        private final int moves;
+
+        Snapshot(ConcurrentConnectFour game, long state){
+            this.game = game;
+            this.state = state;
+            long key = state & KEY_MASK;
+            this.mask = game.mask(key);
+            this.stones = key - mask;
+            this.moves = Long.bitCount(mask);
+        }
+
+        /**
+         * Get the status of the game.
+         * @return status.
+         */
+        public ConnectFour.Status getStatus(){
+            return status(state);
+        }
+
+        /**
+         * Get the number of checkers on the board.
+         * @return number of moves played.
+         */
+        public int getMoves(){
+            return moves;
+        }
+
+        /**
+         * Get the player whose turn it is, whether or not the game is over.
+         * @return id of the player, 1 or 2.
+         */
+        public int getCurrentPlayer(){
+            return (moves & 1) + 1;
+        }
+
+        /**
+         * Get the key of the position, see {@link BitboardPosition#key()}.
+         * @return unique key of the position.
+         */
+        public long getPositionKey(){
+            return state & KEY_MASK;
+        }
+
+        /**
+         * Get the position of the board for search engines.
+         * @return a new position.
+         */
+        public Position getPosition(){
+            BitboardPosition shape = game.shape;
+            return BitboardPosition.fromKey(shape.height(), shape.width(), shape.connect(), state & KEY_MASK);
+        }
+
+        /**
+         * Get the board array.
+         * @return a new board, rows from the top, 0 for an empty cell, otherwise the id of the player owning it.
+         */
+        public int[][] getBoard(){
+            int[][] board = new int[getRows()][getColumns()];
+            copyInto(board);
+            return board;
+        }
+
+        @Override
+        public int getRows(){
+            return game.shape.height();
+        }
+
+        @Override
+        public int getColumns(){
+            return game.shape.width();
+        }
+
+        @Override
+        public int cellAt(int row, int col){
+            Objects.checkIndex(row, getRows());
+            Objects.checkIndex(col, getColumns());
+            return cell(row, col);
+        }
+
+        @Override
+        public int height(int col){
+            Objects.checkIndex(col, getColumns());
+            return Long.bitCount(mask & game.shape.columnMask(col));
+        }
+
+        @Override
+        public void copyInto(int[] dest){
+            int rows = getRows();
+            int columns = getColumns();
+            Objects.checkFromIndexSize(0, rows * columns, dest.length);
+            for(int i = 0; i < rows; i++){
+                for(int j = 0; j < columns; j++){
+                    dest[i * columns + j] = cell(i, j);
+                }
+            }
+        }
+
+        @Override
+        public void copyInto(int[][] dest){
+            int rows = getRows();
+            int columns = getColumns();
+            Objects.checkFromIndexSize(0, rows, dest.length);
+            for(int i = 0; i < rows; i++){
+                int[] row = dest[i];
+                Objects.checkFromIndexSize(0, columns, row.length);
+                for(int j = 0; j < columns; j++){
+                    row[j] = cell(i, j);
+                }
+            }
+        }
+
+        /**
+         * Owner of a cell, row 0 at the top.
+         */
+        private int cell(int row, int col){
+            long bit = 1L << (col * (getRows() + 1) + getRows() - 1 - row);
+            if((mask & bit) == 0){
+                return 0;
+            }
+            boolean ownedByCurrent = (stones & bit) != 0;
+            boolean firstPlayerToMove = (moves & 1) == 0;
+            return ownedByCurrent == firstPlayerToMove ? 1 : 2;
+        }
+    }
+}
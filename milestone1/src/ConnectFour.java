@@ -1,9 +1,10 @@
-import java.util.*;
+import java.util.Objects;
 
 /**
  * A Connect 4 game interface. Connect 4 is a two-player game where each player tries to
  * make a straight line (vertical, horizontal, or diagonal) of four of their
- * colored checkers by dropping their checkers into a 6 x 7 grid.
+ * colored checkers by dropping their checkers into a 6 x 7 grid. Other board sizes and line lengths
+ * can be chosen when the game is created.
  * The ConnectFourGame interface provides methods for client to set two players, make move(choose a column to drop a checker every round),
  * get current player, get the game status and get a deep copy of the board.
  * Example:
@@ -76,6 +77,8 @@ public class ConnectFour{
         DRAW
     }
 
+    private static final Status[] STATUSES = Status.values();
+
     private Player player1;
     private Player player2;
     private Player nextMove;
@@ -84,13 +87,30 @@ public class ConnectFour{
 
     private int player_id;
     /**
-     * Record the next position for each column.
+     * Game board recording every user's move, stored as a bitboard when it fits in 64 bits.
+     */
+    private final Position position;
+    /**
+     * One entry per move played, so that moves can be taken back: the column in the low 4 bits,
+     * then the status before the move and the winning flags of both players before the move.
+     */
+    private final byte[] history;
+    /**
+     * Read-only view of {@link #position}, created once.
+     */
+    private final BoardView view = new LiveBoardView();
+    /**
+     * Receiver of trace events, drops everything unless a sink is set.
+     */
+    private TraceSink trace = TraceSink.NONE;
+    /**
+     * Receiver of move latencies, or null.
      */
-    HashMap<Integer,Integer> nextPositions = new HashMap<Integer, Integer>();
+    private EngineMetrics metrics;
     /**
-     * 6 * 7 game board recording every user's move.
+     * Id of the game in flight recorder events, see {@link GameEvents}.
      */
-    private int[][] board = new int[6][7];
+    private final long id;
 
     /**
      * Constructor for initializing players and game status.
@@ -98,44 +118,71 @@ public class ConnectFour{
      * @param playerName2, player 2's name
      */
     public ConnectFour(String playerName1, String playerName2){
+        this(playerName1, playerName2, Position.HEIGHT, Position.WIDTH, Position.CONNECT);
+    }
+
+    /**
+     * Constructor for a game on a board of another size.
+     * @param playerName1, player 1's name
+     * @param playerName2, player 2's name
+     * @param rows number of rows, [1, 15] inclusive.
+     * @param columns number of columns, [1, 15] inclusive.
+     * @param connect number of checkers in a line to win, at least 2 and at most the number of rows or columns.
+     * @throws IllegalArgumentException when the board size or line length is out of range.
+     */
+    public ConnectFour(String playerName1, String playerName2, int rows, int columns, int connect){
+        this(playerName1, playerName2, rows, columns, connect, GameEvents.nextGameId());
+    }
+
+    /**
+     * Constructor for a game keeping the id it had before, for recovery after a restart.
+     * @param id id of the game, see {@link GameEvents#reserveGameIds(long)}.
+     */
+    ConnectFour(String playerName1, String playerName2, int rows, int columns, int connect, long id){
+        this.id = id;
+        position = Position.create(rows, columns, connect);
+        history = new byte[position.cells()];
         players = new Player[2];
-       
-       
-        for(int i=0;i<7;i++){
-            nextPositions.put(i,5);
-        }
 
         status = Status.PLAYING;
         this.setPlayers(playerName1,playerName2);
+
+        GameEvents.GameCreated event = new GameEvents.GameCreated();
+        if(event.shouldCommit()){
+            event.gameId = id;
+            event.player1 = playerName1;
+            event.player2 = playerName2;
+            event.rows = rows;
+            event.columns = columns;
+            event.connect = connect;
+            event.commit();
+        }
     }
 
 
     /**
      * Allow a player to drop a checker into a specified column. Check if there is a winner after the player make a move and switch to another player.
-     * @param column into which the player drop a checker, integer, [1, 7] inclusive.
+     * @param column into which the player drop a checker, integer, [1, number of columns] inclusive.
      * @throws IllegalArgumentException when
      * 1.the column is full
      * 2.the column specified is out of range.
+     * @throws IllegalStateException when the game is over.
      */
 
     public void makeMove(int column){
+        long start = metrics == null ? 0 : System.nanoTime();
+        GameEvents.Move event = new GameEvents.Move();
+        event.begin();
         int col = column - 1;
+        checkMove(col);
 
-        if(col < 0 || col > board[0].length){
-            throw new IllegalArgumentException("Column is out of range. please enter column from 1 to 7");
-        }
-        int row = nextPositions.get(col);
-
-        if(row < 0){
-            throw new IllegalArgumentException("Column is full. Please choose another column");
-        }
-
-        board[row][col] = player_id;
-
-        nextPositions.put(col,row-1);
+        history[position.moves()] = (byte) (col | status.ordinal() << 4
+                | (player1.is_winner ? 1 << 6 : 0) | (player2.is_winner ? 1 << 7 : 0));
+        boolean won = position.isWinningMove(col);
+        position.play(col);
+        trace.record(TraceSink.MOVE, 0, column, player_id);
 
-
-        if(checkWinner()){
+        if(checkWinner(column, won)){
             if(player_id == 1){
                 status = Status.PLAYER_1_WINS;
                 player1.is_winner = true;
@@ -146,9 +193,14 @@ public class ConnectFour{
             }
         }
 
-        else{
-            checkDraw();
+        else if(checkDraw()){
+            status = Status.DRAW;
+        }
+
+        if(status != Status.PLAYING){
+            recordGameEnd();
         }
+        recordMove(event, column, start);
 
         // System.out.println("Current: "+player_id+" "+nextMove.name);
         player_id = (player_id) %2 + 1;
@@ -157,6 +209,83 @@ public class ConnectFour{
         // System.out.println(nextMove.name);
     }
 
+    /**
+     * Emit the events of a move that was just played, before switching players.
+     * Kept out of {@link #makeMove(int)} so that it stays small enough to be inlined.
+     * @param event flight recorder event begun when the move started.
+     * @param column column of the move, counted from 1.
+     * @param start {@link System#nanoTime()} when the move started, read only when metrics are on.
+     */
+    private void recordMove(GameEvents.Move event, int column, long start){
+        if(event.shouldCommit()){
+            event.gameId = id;
+            event.column = column;
+            event.player = player_id;
+            event.moves = position.moves();
+            event.positionKey = position.zobrist();
+            event.commit();
+        }
+        if(metrics != null){
+            metrics.getMoveLatency().record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Emit the events of the end of the game.
+     */
+    private void recordGameEnd(){
+        trace.record(TraceSink.GAME_END, 0, status.ordinal(), position.moves());
+        GameEvents.GameEnd event = new GameEvents.GameEnd();
+        if(event.shouldCommit()){
+            event.gameId = id;
+            event.status = status.name();
+            event.moves = position.moves();
+            event.commit();
+        }
+    }
+
+    /**
+     * Check that a move can be played, kept out of {@link #makeMove(int)} so that it stays small enough to inline.
+     * @param col column index, counted from 0.
+     */
+    private void checkMove(int col){
+        if(status != Status.PLAYING){
+            throw new IllegalStateException("The game is over");
+        }
+
+        if(col < 0 || col >= position.width()){
+            throw new IllegalArgumentException("Column is out of range. please enter column from 1 to " + position.width());
+        }
+
+        if(!position.canPlay(col)){
+            throw new IllegalArgumentException("Column is full. Please choose another column");
+        }
+    }
+
+    /**
+     * Take back the last move: the checker is removed, and the current player, the game status and
+     * the winning status of the players are restored to what they were before the move.
+     * Takes constant time and allocates nothing, so engines can walk a game tree in place.
+     * @return the column of the move taken back, counted from 1.
+     * @throws IllegalStateException when no move has been made.
+     */
+    public int undoMove(){
+        int moves = position.moves();
+        if(moves == 0){
+            throw new IllegalStateException("No move to undo");
+        }
+        int entry = history[moves - 1];
+        int col = entry & 15;
+        position.undo(col);
+        status = STATUSES[(entry >>> 4) & 3];
+        player1.is_winner = (entry & 1 << 6) != 0;
+        player2.is_winner = (entry & 1 << 7) != 0;
+        player_id = player_id % 2 + 1;
+        nextMove = players[player_id - 1];
+        trace.record(TraceSink.UNDO, 0, col + 1, player_id);
+        return col + 1;
+    }
+
     /**
      * Set the players of current game.
      * @param playerName1 the name of the player 1
@@ -174,6 +303,22 @@ public class ConnectFour{
         this.nextMove = p1;
     }
 
+    /**
+     * Set where trace events of this game are sent. Tracing is off by default.
+     * @param trace sink receiving the events, {@link TraceSink#NONE} to turn tracing off.
+     */
+    public void setTraceSink(TraceSink trace){
+        this.trace = trace == null ? TraceSink.NONE : trace;
+    }
+
+    /**
+     * Set where the time taken by every {@link #makeMove(int)} is recorded. Metrics are off by default.
+     * @param metrics metrics receiving the latencies, null to turn them off.
+     */
+    public void setMetrics(EngineMetrics metrics){
+        this.metrics = metrics;
+    }
+
     /**
      * Get current game status.
      * @return Status, an enum represents the game status
@@ -190,132 +335,183 @@ public class ConnectFour{
      */
 
     public int[][] getBoard() {
-        int[][] newBoard = new int[6][7];
-        for (int i = 0; i < board.length; ++i) {
-            for (int j = 0; j < board[0].length; ++j) {
-                newBoard[i][j] = board[i][j];
+        int[][] newBoard = new int[position.height()][position.width()];
+        for (int i = 0; i < position.height(); ++i) {
+            for (int j = 0; j < position.width(); ++j) {
+                newBoard[i][j] = cell(i, j);
             }
         }
         return newBoard;
     }
 
     /**
-     * Get current player (whose move it is).
-     * @return Player object.
+     * Get a read-only view of the board. Unlike {@link #getBoard()} it copies nothing: the same
+     * view is returned on every call and always shows the current board.
+     * @return view of the board.
      */
-
-    public Player getCurrentPlayer(){
-        return nextMove;
+    public BoardView getBoardView(){
+        return view;
     }
 
     /**
-     * Check if any player win in horizontal, vertical, diagonal direction.
-     * @return true if there is winner.
+     * Get the owner of a cell, rows counted from the top like in {@link #getBoard()}.
+     * @param i row index, 0 is the top row.
+     * @param j column index, 0 is the leftmost column.
+     * @return 0 for an empty cell, otherwise the id of the player owning it.
      */
-    private boolean checkWinner(){
-        return checkHorizontal() || checkVertical() || checkDiagonalDown() || checkDiagonalUp();
+    private int cell(int i, int j){
+        return position.cellAt(position.height() - 1 - i, j);
     }
 
     /**
-     * Check if any player win in horizontal direction.
-     * @return true if there is winner.
+     * Get the position of the board for search engines.
+     * @return a copy of the current position.
      */
-    private boolean checkHorizontal(){
-        System.out.println("checking horizontal");
-        int counter = 0;
-        for(int i=0;i<board.length;i++){
-            for(int j=0;j<board[0].length;j++){
-                if(board[i][j] == player_id){
-                    counter++;
-                    if(counter == 4){
-                        return true;
-                    }
-                }else{
-                    counter = 0;
-                }
-            }
-        }
+    public Position getPosition(){
+        return position.copy();
+    }
 
-        return false;
+    /**
+     * Get a 64-bit key identifying the position of the board, for transposition tables, caches and game databases.
+     * It is maintained by every move and undo, so reading it costs nothing. Two games with the same
+     * checkers in the same cells have the same key, whatever the order of the moves.
+     * @return Zobrist hash of the board.
+     */
+    public long positionKey(){
+        return position.zobrist();
     }
 
+    /**
+     * Get a 64-bit key identifying the position of the board up to symmetry: a position and its
+     * left-right mirror have the same key. Maintained like {@link #positionKey()}, without building the mirrored board.
+     * @return Zobrist hash of the board up to symmetry.
+     */
+    public long canonicalPositionKey(){
+        return position.canonicalZobrist();
+    }
 
     /**
-     * Check if there is a draw.
-     * @return true if the board is full without a winner.
+     * Get the id of the game, unique within the JVM and carried by its flight recorder events.
+     * @return game id, counted from 1.
      */
-    private boolean checkDraw(){
-        for(int i=0;i<board.length;i++){
-            for(int j=0;j<board[0].length;j++){
-                if(board[i][j] == 0){
-                    return false;
-                }
-            }
-        }
+    public long getId(){
+        return id;
+    }
 
-        return true;
+    /**
+     * Get the name of a player, for logs and snapshots.
+     * @param player id of the player, 1 or 2.
+     * @return name of the player.
+     */
+    String getPlayerName(int player){
+        return players[player - 1].name;
     }
 
+    /**
+     * Get the number of checkers in a line to win, for logs and snapshots.
+     * @return line length.
+     */
+    int getConnect(){
+        return position.connect();
+    }
 
     /**
-     * Check if any player win in vertical direction.
-     * @return true if there is winner.
+     * Get the columns of the moves played so far, for logs and snapshots.
+     * @return columns counted from 0, in the order they were played.
      */
-    private boolean checkVertical(){
-        System.out.println("checking vertical");
-
-        int counter = 0;
-        for(int j=0;j<board[0].length;j++){
-            for(int i=0;i<board.length;i++){
-            
-                if(board[i][j] == player_id){
-                    counter++;
-                    if(counter == 4){
-                        return true;
-                    }
-                }else{
-                    counter = 0;
-                }
-            }
+    byte[] moveHistory(){
+        byte[] columns = new byte[position.moves()];
+        for(int i = 0; i < columns.length; i++){
+            columns[i] = (byte) (history[i] & 15);
         }
+        return columns;
+    }
+
+    /**
+     * Get current player (whose move it is).
+     * @return Player object.
+     */
 
-        return false;
+    public Player getCurrentPlayer(){
+        return nextMove;
     }
 
     /**
-     * Check if any player win in diagonal up direction.
+     * Check if the checker just dropped makes the current player win in horizontal, vertical, diagonal direction.
+     * The check is {@link Position#isWinningMove(int)}, done before the checker is dropped; a game stops at its first win, so the current player holds no other line.
+     * @param column column of the checker just dropped, counted from 1.
+     * @param won result of the check.
      * @return true if there is winner.
      */
-    private boolean checkDiagonalUp(){
-        System.out.println("checking diagonal up");
+    private boolean checkWinner(int column, boolean won){
+        trace.record(TraceSink.WIN_CHECK, 0, column, won ? 1 : 0);
+        return won;
+    }
 
-        for(int i=0;i<board.length - 3;i++){
-            for(int j=0;j<board[0].length - 3;j++){
-                if(board[i][j] == player_id && board[i+1][j+1] == player_id && board[i+2][j+2] == player_id && board[i+3][j+3]==player_id){
-                    return true;
-                }
-            }
-        }
 
-        return false;
+    /**
+     * Check if there is a draw.
+     * @return true if the board is full without a winner.
+     */
+    private boolean checkDraw(){
+        return position.moves() == position.cells();
     }
 
     /**
-     * Check if any player win in diagonal down direction.
-     * @return true if there is winner.
+     * View reading the position of this game directly.
      */
-    private boolean checkDiagonalDown(){
-        System.out.println("checking diagonal down");
+    private final class LiveBoardView implements BoardView {
+        @Override
+        public int getRows(){
+            return position.height();
+        }
+
+        @Override
+        public int getColumns(){
+            return position.width();
+        }
+
+        @Override
+        public int cellAt(int row, int col){
+            checkCell(row, col);
+            return cell(row, col);
+        }
 
-        for(int i=0;i<board.length - 3;i++){
-            for(int j=3;j<board[0].length;j++){
-                if(board[i][j] == player_id && board[i+1][j-1] == player_id && board[i+2][j-2] == player_id && board[i+3][j-3]==player_id){
-                    return true;
+        @Override
+        public int height(int col){
+            checkCell(0, col);
+            return position.height(col);
+        }
+
+        @Override
+        public void copyInto(int[] dest){
+            int rows = position.height();
+            int columns = position.width();
+            Objects.checkFromIndexSize(0, rows * columns, dest.length);
+            for(int i = 0; i < rows; i++){
+                for(int j = 0; j < columns; j++){
+                    dest[i * columns + j] = cell(i, j);
                 }
             }
         }
 
-        return false;
+        @Override
+        public void copyInto(int[][] dest){
+            int rows = position.height();
+            int columns = position.width();
+            Objects.checkFromIndexSize(0, rows, dest.length);
+            for(int i = 0; i < rows; i++){
+                int[] row = dest[i];
+                Objects.checkFromIndexSize(0, columns, row.length);
+                for(int j = 0; j < columns; j++){
+                    row[j] = cell(i, j);
+                }
+            }
+        }
+
+        private void checkCell(int row, int col){
+            Objects.checkIndex(row, position.height());
+            Objects.checkIndex(col, position.width());
+        }
     }
-    
 }
@@ -0,0 +1,257 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of what the engine does, for watching it in production: nodes visited, beta cutoffs,
+ * transposition table hits and misses, how often iterative deepening changes its mind at every
+ * depth, and latency histograms of {@link ConnectFour#makeMove(int)} and of AI move selection.
+ * Metrics are off unless an instance is given to a game or an engine, see
+ * {@link ConnectFour#setMetrics(EngineMetrics)} and {@link Solver#setMetrics(EngineMetrics)}.
+ * One instance can be shared by any number of games, engines and threads. Every counter is a
+ * {@link LongAdder}, striped per thread, and searches count into plain fields of their own,
+ * adding them here once per search, so recording adds no contention to the search itself.
+ * Counters are cumulative; {@link #getLastSearch()} holds the counts of the last search alone.
+ * Example:
+ * <pre>
+ *         EngineMetrics metrics = new EngineMetrics();
+ *         IterativeDeepening search = new IterativeDeepening();
+ *         search.setMetrics(metrics);
+ *         game.setMetrics(metrics);
+ *         game.makeMove(search.bestColumn(game, System.nanoTime() + 100_000_000L));
+ *         System.out.println(metrics);
+ * </pre>
+ */
+public class EngineMetrics {
+    /**
+     * Counts of a single search.
+     */
+    public static final class Search {
+        private final long nodes;
+        private final long cutoffs;
+        private final long tableHits;
+        private final long tableMisses;
+        private final long nanos;
+
+        Search(long nodes, long cutoffs, long tableHits, long tableMisses, long nanos){
+            this.nodes = nodes;
+            this.cutoffs = cutoffs;
+            this.tableHits = tableHits;
+            this.tableMisses = tableMisses;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Get the number of positions visited.
+         * @return node count.
+         */
+        public long getNodes(){
+            return nodes;
+        }
+
+        /**
+         * Get the number of moves that scored at least beta and ended the search of their position.
+         * @return cutoff count.
+         */
+        public long getCutoffs(){
+            return cutoffs;
+        }
+
+        /**
+         * Get the number of transposition table probes that found the position.
+         * @return hit count.
+         */
+        public long getTableHits(){
+            return tableHits;
+        }
+
+        /**
+         * Get the number of transposition table probes that did not find the position.
+         * @return miss count.
+         */
+        public long getTableMisses(){
+            return tableMisses;
+        }
+
+        /**
+         * Get the duration of the search.
+         * @return duration in nanoseconds.
+         */
+        public long getNanos(){
+            return nanos;
+        }
+    }
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder cutoffs = new LongAdder();
+    private final LongAdder tableHits = new LongAdder();
+    private final LongAdder tableMisses = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+    /**
+     * Number of iterations that returned another column than the previous one, by depth.
+     */
+    private final LongAdder[] bestMoveChanges = new LongAdder[Solver.FULL_DEPTH + 1];
+    private final LatencyHistogram moveLatency = new LatencyHistogram();
+    private final LatencyHistogram aiMoveLatency = new LatencyHistogram();
+    private volatile Search lastSearch = new Search(0, 0, 0, 0, 0);
+
+    /**
+     * Create metrics with every counter at 0.
+     */
+    public EngineMetrics(){
+        for(int depth = 0; depth < bestMoveChanges.length; depth++){
+            bestMoveChanges[depth] = new LongAdder();
+        }
+    }
+
+    /**
+     * Add the counts of one finished or abandoned search.
+     */
+    void recordSearch(long nodes, long cutoffs, long tableHits, long tableMisses, long nanos){
+        searches.increment();
+        this.nodes.add(nodes);
+        this.cutoffs.add(cutoffs);
+        this.tableHits.add(tableHits);
+        this.tableMisses.add(tableMisses);
+        searchNanos.add(nanos);
+        lastSearch = new Search(nodes, cutoffs, tableHits, tableMisses, nanos);
+    }
+
+    /**
+     * Count an iteration of iterative deepening whose best column differs from the previous iteration.
+     */
+    void recordBestMoveChange(int depth){
+        bestMoveChanges[Math.min(depth, bestMoveChanges.length - 1)].increment();
+    }
+
+    /**
+     * Get the number of searches recorded. A parallel search counts once per thread task.
+     * @return search count.
+     */
+    public long getSearches(){
+        return searches.sum();
+    }
+
+    /**
+     * Get the number of positions visited by all searches.
+     * @return node count.
+     */
+    public long getNodes(){
+        return nodes.sum();
+    }
+
+    /**
+     * Get the number of beta cutoffs of all searches.
+     * @return cutoff count.
+     */
+    public long getCutoffs(){
+        return cutoffs.sum();
+    }
+
+    /**
+     * Get the number of transposition table probes that found the position.
+     * @return hit count.
+     */
+    public long getTableHits(){
+        return tableHits.sum();
+    }
+
+    /**
+     * Get the number of transposition table probes that did not find the position.
+     * @return miss count.
+     */
+    public long getTableMisses(){
+        return tableMisses.sum();
+    }
+
+    /**
+     * Get the share of transposition table probes that found the position.
+     * @return hit rate, [0, 1] inclusive, 0 if the table was never probed.
+     */
+    public double getTableHitRate(){
+        long hits = getTableHits();
+        long probes = hits + getTableMisses();
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    /**
+     * Get the search speed over all searches. Searches running in parallel add up their times,
+     * so this is the speed of one thread.
+     * @return nodes per second, 0 if nothing was searched.
+     */
+    public double getNodesPerSecond(){
+        long nanos = searchNanos.sum();
+        return nanos == 0 ? 0 : getNodes() * 1e9 / nanos;
+    }
+
+    /**
+     * Get how often iterative deepening changed its best column when reaching a depth.
+     * @param depth depth of the iteration, at least 2.
+     * @return number of changes at that depth.
+     */
+    public long getBestMoveChanges(int depth){
+        return depth < 0 || depth >= bestMoveChanges.length ? 0 : bestMoveChanges[depth].sum();
+    }
+
+    /**
+     * Get the counts of the last search recorded.
+     * @return counts of one search.
+     */
+    public Search getLastSearch(){
+        return lastSearch;
+    }
+
+    /**
+     * Get the histogram of the time taken by {@link ConnectFour#makeMove(int)}.
+     * @return live histogram in nanoseconds.
+     */
+    public LatencyHistogram getMoveLatency(){
+        return moveLatency;
+    }
+
+    /**
+     * Get the histogram of the time taken by engines to choose a column for a game.
+     * @return live histogram in nanoseconds.
+     */
+    public LatencyHistogram getAiMoveLatency(){
+        return aiMoveLatency;
+    }
+
+    /**
+     * Set every counter back to 0.
+     */
+    public void reset(){
+        searches.reset();
+        nodes.reset();
+        cutoffs.reset();
+        tableHits.reset();
+        tableMisses.reset();
+        searchNanos.reset();
+        for(LongAdder changes : bestMoveChanges){
+            changes.reset();
+        }
+        moveLatency.reset();
+        aiMoveLatency.reset();
+        lastSearch = new Search(0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Get a readable summary of the counters.
+     * @return multi-line report.
+     */
+    @Override
+    public String toString(){
+        StringBuilder changes = new StringBuilder();
+        for(int depth = 0; depth < bestMoveChanges.length; depth++){
+            long count = bestMoveChanges[depth].sum();
+            if(count > 0){
+                changes.append(changes.length() == 0 ? "" : " ").append(depth).append(':').append(count);
+            }
+        }
+        return String.format("searches=%d nodes=%d nodes/s=%.0f cutoffs=%d table hit rate=%.1f%%%n"
+                        + "best move changes by depth: %s%n"
+                        + "makeMove: %s%n"
+                        + "AI move: %s",
+                getSearches(), getNodes(), getNodesPerSecond(), getCutoffs(), getTableHitRate() * 100,
+                changes.length() == 0 ? "none" : changes, moveLatency, aiMoveLatency);
+    }
+}
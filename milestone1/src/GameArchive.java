@@ -0,0 +1,416 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact format for archiving many finished games, written and read as a stream. A game is stored
+ * as its moves rather than its board: a varint move count followed by the columns of the moves,
+ * counted from 0, packed in just enough bits for the board's width, 3 on the standard 6 x 7 board.
+ * Player names are stored once: the first game of a player names it in full, and later games refer
+ * to it by its index in a table both sides build as the stream goes. A 6 x 7 game between known
+ * players takes 4 to 6 bytes plus 3 bits per move, so scans read little and need no index.
+ * <p>
+ * Stream layout:
+ * <pre>
+ *         int     magic "C4GA", big-endian
+ *         byte    format version
+ *         games, each:
+ *         byte    flags: status ordinal in bits 0-1, bit 2 set when the board is not 6 x 7 x 4
+ *         varint  player 1, then player 2: 0 followed by a new name (varint length and UTF-8
+ *                 bytes, at most 64 KiB), which takes the next index of the table, or 1 + the
+ *                 index of a known name
+ *         bytes   rows, columns, connect, only when bit 2 is set
+ *         varint  number of moves
+ *         bits    columns of the moves, low bits first, padded to a whole byte
+ * </pre>
+ * Varints take 7 bits per byte, low bits first. The table keeps every name seen, so it suits
+ * archives with many games per player rather than unique names.
+ * Example:
+ * <pre>
+ *         try (GameArchive.Writer out = new GameArchive.Writer(Files.newOutputStream(path))) {
+ *             out.write(game);
+ *         }
+ *         try (GameArchive.Reader in = new GameArchive.Reader(Files.newInputStream(path))) {
+ *             while (in.next()) {
+ *                 System.out.println(in.getPlayerName(1) + " " + in.getStatus() + " in " + in.getMoveCount());
+ *             }
+ *         }
+ * </pre>
+ */
+public final class GameArchive {
+    private static final int MAGIC = 0x43344741;
+    private static final int VERSION = 1;
+    private static final int CUSTOM_BOARD = 1 << 2;
+    /**
+     * Longest player name in UTF-8 bytes, so that a corrupt length cannot exhaust the heap.
+     */
+    private static final int MAX_NAME_BYTES = 1 << 16;
+    private static final ConnectFour.Status[] STATUSES = ConnectFour.Status.values();
+
+    private GameArchive(){
+    }
+
+    /**
+     * Number of bits of a column on a board.
+     */
+    private static int columnBits(int columns){
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(columns - 1));
+    }
+
+    /**
+     * Writer of an archive. Not thread-safe.
+     */
+    public static final class Writer implements AutoCloseable {
+        private final OutputStream out;
+        private final Map<String, Integer> names = new HashMap<>();
+
+        /**
+         * Start an archive.
+         * @param out stream receiving the archive, closed with the writer.
+         * @throws IOException when writing the header failed.
+         */
+        public Writer(OutputStream out) throws IOException{
+            this.out = new BufferedOutputStream(out, 1 << 16);
+            this.out.write(new byte[]{(byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8), (byte) MAGIC, VERSION});
+        }
+
+        /**
+         * Append a game, usually a finished one.
+         * @param game game to archive, as it stands.
+         * @throws IOException when writing failed.
+         * @throws IllegalArgumentException when a player name is longer than 64 KiB in UTF-8.
+         */
+        public void write(ConnectFour game) throws IOException{
+            BoardView board = game.getBoardView();
+            int rows = board.getRows();
+            int columns = board.getColumns();
+            int connect = game.getConnect();
+            boolean custom = rows != Position.HEIGHT || columns != Position.WIDTH || connect != Position.CONNECT;
+            out.write(game.getStatus().ordinal() | (custom ? CUSTOM_BOARD : 0));
+            writeName(game.getPlayerName(1));
+            writeName(game.getPlayerName(2));
+            if(custom){
+                out.write(rows);
+                out.write(columns);
+                out.write(connect);
+            }
+            byte[] moves = game.moveHistory();
+            writeVarint(moves.length);
+            int width = columnBits(columns);
+            long bits = 0;
+            int count = 0;
+            for(byte move : moves){
+                bits |= (long) move << count;
+                count += width;
+                if(count >= 8){
+                    out.write((int) bits);
+                    bits >>>= 8;
+                    count -= 8;
+                }
+            }
+            if(count > 0){
+                out.write((int) bits);
+            }
+        }
+
+        /**
+         * Write a reference to a name, adding it to the table the first time.
+         */
+        private void writeName(String name) throws IOException{
+            Integer index = names.get(name);
+            if(index != null){
+                writeVarint(index + 1);
+                return;
+            }
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            if(bytes.length > MAX_NAME_BYTES){
+                throw new IllegalArgumentException("Player name longer than " + MAX_NAME_BYTES + " bytes");
+            }
+            names.put(name, names.size());
+            writeVarint(0);
+            writeVarint(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeVarint(int value) throws IOException{
+            while((value & ~0x7F) != 0){
+                out.write(value | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        /**
+         * Write the games buffered so far to the stream.
+         * @throws IOException when writing failed.
+         */
+        public void flush() throws IOException{
+            out.flush();
+        }
+
+        /**
+         * Write the games buffered so far and close the stream.
+         * @throws IOException when writing failed.
+         */
+        @Override
+        public void close() throws IOException{
+            out.close();
+        }
+    }
+
+    /**
+     * Reader of an archive, one game at a time. The accessors describe the game of the last call to
+     * {@link #next()}, whose moves live in a buffer reused by the next game. Not thread-safe.
+     */
+    public static final class Reader implements AutoCloseable {
+        private final InputStream in;
+        private final List<String> names = new ArrayList<>();
+        private ConnectFour.Status status;
+        private String playerName1;
+        private String playerName2;
+        private int rows;
+        private int columns;
+        private int connect;
+        /**
+         * Columns of the moves counted from 0, the first {@link #moveCount} of them.
+         */
+        private final byte[] moves = new byte[Position.MAX_SIZE * Position.MAX_SIZE];
+        private int moveCount;
+
+        /**
+         * Start reading an archive.
+         * @param in stream of the archive, closed with the reader.
+         * @throws IOException when the stream cannot be read or is not an archive.
+         */
+        public Reader(InputStream in) throws IOException{
+            this.in = new BufferedInputStream(in, 1 << 16);
+            int magic = 0;
+            for(int i = 0; i < 4; i++){
+                magic = magic << 8 | readByte();
+            }
+            if(magic != MAGIC){
+                throw new IOException("Not a game archive");
+            }
+            if(readByte() != VERSION){
+                throw new IOException("Unsupported game archive version");
+            }
+        }
+
+        /**
+         * Read the next game.
+         * @return false at the end of the archive.
+         * @throws IOException when the stream cannot be read, or a game is cut short or invalid.
+         */
+        public boolean next() throws IOException{
+            int flags = in.read();
+            if(flags < 0){
+                return false;
+            }
+            if((flags & ~(CUSTOM_BOARD | 3)) != 0){
+                throw new IOException("Bad game flags " + flags);
+            }
+            status = STATUSES[flags & 3];
+            playerName1 = readName();
+            playerName2 = readName();
+            if((flags & CUSTOM_BOARD) != 0){
+                rows = readByte();
+                columns = readByte();
+                connect = readByte();
+                if(rows < 1 || rows > Position.MAX_SIZE || columns < 1 || columns > Position.MAX_SIZE){
+                    throw new IOException("Bad board size " + rows + " x " + columns);
+                }
+                if(connect < 2 || connect > Math.max(rows, columns)){
+                    throw new IOException("Bad connect length " + connect + " for " + rows + " x " + columns);
+                }
+            }else{
+                rows = Position.HEIGHT;
+                columns = Position.WIDTH;
+                connect = Position.CONNECT;
+            }
+            moveCount = readVarint();
+            if(moveCount > rows * columns){
+                throw new IOException("Too many moves: " + moveCount);
+            }
+            int width = columnBits(columns);
+            int mask = (1 << width) - 1;
+            long bits = 0;
+            int count = 0;
+            for(int i = 0; i < moveCount; i++){
+                if(count < width){
+                    bits |= (long) readByte() << count;
+                    count += 8;
+                }
+                int column = (int) bits & mask;
+                if(column >= columns){
+                    throw new IOException("Column out of range: " + column);
+                }
+                moves[i] = (byte) column;
+                bits >>>= width;
+                count -= width;
+            }
+            return true;
+        }
+
+        /**
+         * Get the status the game was archived with.
+         * @return status.
+         */
+        public ConnectFour.Status getStatus(){
+            return status;
+        }
+
+        /**
+         * Get the name of a player.
+         * @param player id of the player, 1 or 2.
+         * @return name of the player.
+         */
+        public String getPlayerName(int player){
+            if(player != 1 && player != 2){
+                throw new IllegalArgumentException("Player must be 1 or 2");
+            }
+            return player == 1 ? playerName1 : playerName2;
+        }
+
+        /**
+         * Get the number of rows of the board.
+         * @return rows.
+         */
+        public int getRows(){
+            return rows;
+        }
+
+        /**
+         * Get the number of columns of the board.
+         * @return columns.
+         */
+        public int getColumns(){
+            return columns;
+        }
+
+        /**
+         * Get the number of checkers in a line to win.
+         * @return line length.
+         */
+        public int getConnect(){
+            return connect;
+        }
+
+        /**
+         * Get the number of moves played.
+         * @return move count.
+         */
+        public int getMoveCount(){
+            return moveCount;
+        }
+
+        /**
+         * Get a move.
+         * @param index index of the move, [0, move count) inclusive.
+         * @return column of the move, counted from 1.
+         */
+        public int getMove(int index){
+            if(index < 0 || index >= moveCount){
+                throw new IndexOutOfBoundsException("Move " + index + " of " + moveCount);
+            }
+            return moves[index] + 1;
+        }
+
+        /**
+         * Get all moves.
+         * @return a new array of the columns of the moves, counted from 1.
+         */
+        public int[] getMoves(){
+            int[] columns = new int[moveCount];
+            for(int i = 0; i < moveCount; i++){
+                columns[i] = moves[i] + 1;
+            }
+            return columns;
+        }
+
+        /**
+         * Replay the game, for instance to look at its board or take moves back.
+         * @return a new game with the moves played.
+         * @throws IOException when the moves do not make a legal game, for instance when they go on
+         * after a win.
+         */
+        public ConnectFour toGame() throws IOException{
+            try{
+                ConnectFour game = new ConnectFour(playerName1, playerName2, rows, columns, connect);
+                for(int i = 0; i < moveCount; i++){
+                    game.makeMove(moves[i] + 1);
+                }
+                return game;
+            }catch(IllegalArgumentException | IllegalStateException e){
+                throw new IOException("Archived game does not replay: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Close the stream.
+         * @throws IOException when closing failed.
+         */
+        @Override
+        public void close() throws IOException{
+            in.close();
+        }
+
+        /**
+         * Read a reference to a name, adding it to the table the first time.
+         */
+        private String readName() throws IOException{
+            int reference = readVarint();
+            if(reference > 0){
+                if(reference > names.size()){
+                    throw new IOException("Unknown player " + (reference - 1));
+                }
+                return names.get(reference - 1);
+            }
+            int length = readVarint();
+            if(length > MAX_NAME_BYTES){
+                throw new IOException("Bad name length " + length);
+            }
+            byte[] bytes = new byte[length];
+            for(int i = 0; i < bytes.length; ){
+                int read = in.read(bytes, i, bytes.length - i);
+                if(read < 0){
+                    throw new EOFException("Game archive cut short");
+                }
+                i += read;
+            }
+            String name = new String(bytes, StandardCharsets.UTF_8);
+            names.add(name);
+            return name;
+        }
+
+        private int readVarint() throws IOException{
+            int value = 0;
+            for(int shift = 0; shift < 32; shift += 7){
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if(b < 0x80){
+                    if(value < 0){
+                        break;
+                    }
+                    return value;
+                }
+            }
+            throw new IOException("Bad varint in game archive");
+        }
+
+        private int readByte() throws IOException{
+            int b = in.read();
+            if(b < 0){
+                throw new EOFException("Game archive cut short");
+            }
+            return b;
+        }
+    }
+}
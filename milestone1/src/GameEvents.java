@@ -0,0 +1,133 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the game core, so that a recording shows games and searches
+ * instead of anonymous CPU time. Every game gets an id, carried by all of its events, and moves
+ * and search depths carry the Zobrist key of their position, so a slow move or depth can be traced
+ * back to the position that caused it.
+ * Events cost a check of a flag when no recording is running. They are enabled by default; a
+ * recording started with {@code -XX:StartFlightRecording} or {@code jcmd <pid> JFR.start} records them
+ * under the "Connect 4" category.
+ */
+public final class GameEvents {
+    private static final AtomicLong NEXT_GAME_ID = new AtomicLong();
+
+    private GameEvents(){
+    }
+
+    /**
+     * Get a new game id, unique within the JVM.
+     * @return game id, counted from 1.
+     */
+    static long nextGameId(){
+        return NEXT_GAME_ID.incrementAndGet();
+    }
+
+    /**
+     * Get the highest id given to a game so far.
+     * @return last game id, 0 if none.
+     */
+    static long lastGameId(){
+        return NEXT_GAME_ID.get();
+    }
+
+    /**
+     * Make sure new games get ids above those of games restored after a restart.
+     * @param highest highest id already in use.
+     */
+    static void reserveGameIds(long highest){
+        NEXT_GAME_ID.accumulateAndGet(highest, Math::max);
+    }
+
+    /**
+     * A game was created.
+     */
+    @Name("connect4.GameCreated")
+    @Label("Game Created")
+    @Category("Connect 4")
+    @StackTrace(false)
+    public static final class GameCreated extends Event {
+        @Label("Game Id")
+        long gameId;
+        @Label("Player 1")
+        String player1;
+        @Label("Player 2")
+        String player2;
+        @Label("Rows")
+        int rows;
+        @Label("Columns")
+        int columns;
+        @Label("Connect")
+        @Description("Number of checkers in a line to win")
+        int connect;
+    }
+
+    /**
+     * A checker was dropped; the duration is the time taken by {@link ConnectFour#makeMove(int)}.
+     */
+    @Name("connect4.Move")
+    @Label("Move")
+    @Category("Connect 4")
+    @StackTrace(false)
+    public static final class Move extends Event {
+        @Label("Game Id")
+        long gameId;
+        @Label("Column")
+        @Description("Column of the move, counted from 1")
+        int column;
+        @Label("Player")
+        @Description("Id of the player who moved, 1 or 2")
+        int player;
+        @Label("Moves")
+        @Description("Number of checkers on the board after the move")
+        int moves;
+        @Label("Position Key")
+        @Description("Zobrist key of the position after the move")
+        long positionKey;
+    }
+
+    /**
+     * A game ended with a win or a draw.
+     */
+    @Name("connect4.GameEnd")
+    @Label("Game End")
+    @Category("Connect 4")
+    @StackTrace(false)
+    public static final class GameEnd extends Event {
+        @Label("Game Id")
+        long gameId;
+        @Label("Status")
+        String status;
+        @Label("Moves")
+        int moves;
+    }
+
+    /**
+     * An iteration of {@link IterativeDeepening} completed; the duration is the time of that iteration.
+     */
+    @Name("connect4.SearchDepth")
+    @Label("Search Depth")
+    @Category("Connect 4")
+    @StackTrace(false)
+    public static final class SearchDepth extends Event {
+        @Label("Depth")
+        int depth;
+        @Label("Score")
+        int score;
+        @Label("Column")
+        @Description("Best column found, counted from 1")
+        int column;
+        @Label("Nodes")
+        long nodes;
+        @Label("Position Key")
+        @Description("Zobrist key of the searched position")
+        long positionKey;
+    }
+}
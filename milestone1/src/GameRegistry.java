@@ -0,0 +1,205 @@
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Games hosted by a server, keyed by {@link ConnectFour#getId()}. The registry is split into
+ * shards, a power of two of them, each a plain map guarded by its own lock, and a game belongs to
+ * the shard picked by the low bits of its id. The shard lock also guards the games of the shard:
+ * {@link #apply(long, Function)} runs an action on a game holding it, so two clients racing on the
+ * same game are serialized while games of other shards proceed in parallel. With many more shards
+ * than cores two busy games rarely share a lock, and no lock is ever held for long: actions must
+ * be quick, such as a move, never a search.
+ * Example:
+ * <pre>
+ *         GameRegistry registry = new GameRegistry();
+ *         long id = registry.create("Lisa", "Bart", 6, 7, 4);
+ *         ConnectFour.Status status = registry.apply(id, game -&gt; {
+ *             game.makeMove(4);
+ *             return game.getStatus();
+ *         });
+ * </pre>
+ */
+public class GameRegistry {
+    private final Shard[] shards;
+
+    /**
+     * Games of one shard and their lock.
+     */
+    private static final class Shard {
+        final ReentrantLock lock = new ReentrantLock();
+        final HashMap<Long, ConnectFour> games = new HashMap<>();
+    }
+
+    /**
+     * Create a registry with 64 shards per core, at most 4096.
+     */
+    public GameRegistry(){
+        this(Math.min(4096, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 64));
+    }
+
+    /**
+     * Create a registry.
+     * @param shards number of shards, a power of two.
+     * @throws IllegalArgumentException when shards is not a power of two.
+     */
+    public GameRegistry(int shards){
+        if(shards < 1 || Integer.bitCount(shards) != 1){
+            throw new IllegalArgumentException("Number of shards must be a power of two");
+        }
+        this.shards = new Shard[shards];
+        for(int i = 0; i < shards; i++){
+            this.shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Create a game and host it.
+     * @param playerName1 player 1's name.
+     * @param playerName2 player 2's name.
+     * @param rows number of rows.
+     * @param columns number of columns.
+     * @param connect number of checkers in a line to win.
+     * @return id of the new game.
+     * @throws IllegalArgumentException when the board size or line length is out of range, see {@link ConnectFour}.
+     */
+    public long create(String playerName1, String playerName2, int rows, int columns, int connect){
+        ConnectFour game = new ConnectFour(playerName1, playerName2, rows, columns, connect);
+        add(game);
+        return game.getId();
+    }
+
+    /**
+     * Host an existing game. The caller must not use the game afterwards, except through {@link #apply(long, Function)}.
+     * @param game game to host.
+     * @throws IllegalArgumentException when a game with the same id is already hosted.
+     */
+    public void add(ConnectFour game){
+        add(game, hosted -> null);
+    }
+
+    /**
+     * Host an existing game, running an action on it holding the lock of its shard just before it
+     * becomes visible, for instance to log its creation before any of its moves.
+     * @param game game to host.
+     * @param action action on the game; if it throws, the game is not hosted.
+     * @param <T> type of the result of the action.
+     * @return result of the action.
+     * @throws IllegalArgumentException when a game with the same id is already hosted.
+     */
+    public <T> T add(ConnectFour game, Function<ConnectFour, T> action){
+        Shard shard = shard(game.getId());
+        shard.lock.lock();
+        try{
+            if(shard.games.containsKey(game.getId())){
+                throw new IllegalArgumentException("Game " + game.getId() + " is already hosted");
+            }
+            T result = action.apply(game);
+            shard.games.put(game.getId(), game);
+            return result;
+        }finally{
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Run an action on a game, holding the lock of its shard. The action must be quick and must not
+     * touch other games of the registry.
+     * @param id id of the game.
+     * @param action action on the game; exceptions it throws are passed on.
+     * @param <T> type of the result of the action.
+     * @return result of the action.
+     * @throws IllegalArgumentException when no game has this id.
+     */
+    public <T> T apply(long id, Function<ConnectFour, T> action){
+        Shard shard = shard(id);
+        shard.lock.lock();
+        try{
+            ConnectFour game = shard.games.get(id);
+            if(game == null){
+                throw new IllegalArgumentException("No game " + id);
+            }
+            return action.apply(game);
+        }finally{
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Stop hosting a game.
+     * @param id id of the game.
+     * @return true if the game was hosted.
+     */
+    public boolean remove(long id){
+        Shard shard = shard(id);
+        shard.lock.lock();
+        try{
+            return shard.games.remove(id) != null;
+        }finally{
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Stop hosting a game, running an action on it holding the lock of its shard just before it
+     * is removed, for instance to log its end after all of its moves.
+     * @param id id of the game.
+     * @param action action on the game; if it throws, the game stays hosted.
+     * @param <T> type of the result of the action.
+     * @return result of the action.
+     * @throws IllegalArgumentException when no game has this id.
+     */
+    public <T> T remove(long id, Function<ConnectFour, T> action){
+        Shard shard = shard(id);
+        shard.lock.lock();
+        try{
+            ConnectFour game = shard.games.get(id);
+            if(game == null){
+                throw new IllegalArgumentException("No game " + id);
+            }
+            T result = action.apply(game);
+            shard.games.remove(id);
+            return result;
+        }finally{
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Run an action on every hosted game, each time holding the lock of its shard. Games created
+     * or removed at the same time may or may not be visited.
+     * @param action quick action on one game, which must not touch other games of the registry.
+     */
+    public void forEach(Consumer<ConnectFour> action){
+        for(Shard shard : shards){
+            shard.lock.lock();
+            try{
+                shard.games.values().forEach(action);
+            }finally{
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Get the number of games hosted. Games created or removed at the same time may or may not be counted.
+     * @return number of games.
+     */
+    public int size(){
+        int size = 0;
+        for(Shard shard : shards){
+            shard.lock.lock();
+            try{
+                size += shard.games.size();
+            }finally{
+                shard.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private Shard shard(long id){
+        return shards[(int) id & (shards.length - 1)];
+    }
+}
@@ -0,0 +1,466 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server hosting many games at once in a {@link GameRegistry}, played over a local TCP socket.
+ * Each connection gets its own thread, and any connection may play any game. Requests and
+ * responses are single lines of text, and a client may send several requests before reading the
+ * answers.
+ * <pre>
+ *         NEW [player1 player2 [rows columns connect]]   OK id
+ *         MOVE id column                                 OK status           column counted from 1
+ *         UNDO id                                        OK column
+ *         STATE id                                       OK status player board   board rows from the top, '/' separated
+ *         AI id millis                                   OK column status    a bot plays for the current player
+ *         END id                                         OK                  the game is no longer hosted
+ *         COUNT                                          OK games
+ *         QUIT                                                               closes the connection
+ * </pre>
+ * Errors are answered with "ERR message". A game's shard lock is held only for the move itself, so
+ * bots think on a copy of the position and their move is refused if the game changed meanwhile.
+ * With a {@link MoveLog}, every change to a game is appended to the log while holding the game's
+ * lock, and answered only once the log is on disk; the wait happens outside the lock, so the
+ * moves of many games share one {@code fsync}. {@link #scheduleSnapshots(long)} saves all games
+ * to the log from time to time, so that a restart recovers them from the last snapshot.
+ * Connection threads are platform threads from a cached pool: a connection costs a thread, while a
+ * game costs only its memory, so a few connections can host any number of games.
+ * Running the class starts a server:
+ * <pre>
+ *         java GameServer [port] [move log [snapshot seconds]]
+ * </pre>
+ * which first recovers the games of an existing log, and takes a snapshot every minute by default.
+ */
+public class GameServer implements AutoCloseable {
+    /**
+     * Port used when none is given on the command line.
+     */
+    public static final int DEFAULT_PORT = 4444;
+    /**
+     * Playouts per move of the bots of the AI request when their time allows, and size of their trees.
+     */
+    private static final int AI_PLAYOUTS = 10_000;
+    /**
+     * Seconds between snapshots when none are given on the command line.
+     */
+    private static final long DEFAULT_SNAPSHOT_SECONDS = 60;
+
+    private final GameRegistry registry;
+    /**
+     * Log of every change to the games, or null.
+     */
+    private final MoveLog log;
+    private final ServerSocket server;
+    private final ExecutorService connections = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "game-server-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final BotRunner runner = new BotRunner();
+    /**
+     * Bot of the AI request, one per connection thread since bots are not thread-safe.
+     */
+    private final ThreadLocal<Bot> bots = ThreadLocal.withInitial(() -> Bot.mcts(AI_PLAYOUTS));
+    private final LatencyHistogram requestLatency = new LatencyHistogram();
+    /**
+     * Thread taking snapshots, or null.
+     */
+    private ScheduledExecutorService snapshots;
+
+    /**
+     * Start a server on the loopback interface with an empty registry.
+     * @param port TCP port, 0 for any free port.
+     * @throws IOException when the port cannot be bound.
+     */
+    public GameServer(int port) throws IOException{
+        this(port, new GameRegistry());
+    }
+
+    /**
+     * Start a server on the loopback interface.
+     * @param port TCP port, 0 for any free port.
+     * @param registry games to host.
+     * @throws IOException when the port cannot be bound.
+     */
+    public GameServer(int port, GameRegistry registry) throws IOException{
+        this(port, registry, null);
+    }
+
+    /**
+     * Start a server on the loopback interface, logging every change to the games.
+     * @param port TCP port, 0 for any free port.
+     * @param registry games to host.
+     * @param log log receiving every change, or null. It is not closed with the server.
+     * @throws IOException when the port cannot be bound.
+     */
+    public GameServer(int port, GameRegistry registry, MoveLog log) throws IOException{
+        this.registry = registry;
+        this.log = log;
+        this.server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "game-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Save every hosted game to the log from now on, in the background.
+     * @param periodMillis time between the start of two snapshots.
+     * @throws IllegalStateException when the server has no log, or snapshots are already scheduled.
+     */
+    public synchronized void scheduleSnapshots(long periodMillis){
+        if(log == null || snapshots != null){
+            throw new IllegalStateException(log == null ? "No move log" : "Snapshots already scheduled");
+        }
+        snapshots = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "game-server-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshots.scheduleWithFixedDelay(() -> {
+            try{
+                log.snapshot(registry);
+            }catch(IOException | IllegalStateException e){
+                // moves fail too when the log does; the next snapshot tries again
+                System.err.println("Snapshot failed: " + e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the port the server listens on.
+     * @return TCP port.
+     */
+    public int getPort(){
+        return server.getLocalPort();
+    }
+
+    /**
+     * Get the games hosted by the server.
+     * @return registry of the games.
+     */
+    public GameRegistry getRegistry(){
+        return registry;
+    }
+
+    /**
+     * Get the histogram of the time taken to execute requests, from parsing to formatting the answer.
+     * @return live histogram in nanoseconds.
+     */
+    public LatencyHistogram getRequestLatency(){
+        return requestLatency;
+    }
+
+    /**
+     * Execute one request, as if it came from a connection.
+     * @param request request line, see the class description.
+     * @return response line, without line terminator; null for QUIT.
+     */
+    public String execute(String request){
+        long start = System.nanoTime();
+        String response;
+        try{
+            response = dispatch(request.trim().split("\\s+"));
+        }catch(IllegalArgumentException | IllegalStateException e){
+            response = "ERR " + e.getMessage();
+        }
+        requestLatency.record(System.nanoTime() - start);
+        return response;
+    }
+
+    private String dispatch(String[] words){
+        switch(words[0].toUpperCase()){
+            case "NEW":
+                return newGame(words);
+            case "MOVE":
+                arguments(words, 2);
+                return "OK " + move(id(words[1]), number(words[2]), null);
+            case "UNDO":
+                arguments(words, 1);
+                return "OK " + undo(id(words[1]));
+            case "STATE":
+                arguments(words, 1);
+                return "OK " + registry.apply(id(words[1]), GameServer::state);
+            case "AI":
+                arguments(words, 2);
+                return ai(id(words[1]), number(words[2]));
+            case "END":
+                arguments(words, 1);
+                end(id(words[1]));
+                return "OK";
+            case "COUNT":
+                return "OK " + registry.size();
+            case "QUIT":
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown request " + words[0]);
+        }
+    }
+
+    private String newGame(String[] words){
+        if(words.length != 1 && words.length != 3 && words.length != 6){
+            throw new IllegalArgumentException("Usage: NEW [player1 player2 [rows columns connect]]");
+        }
+        String player1 = words.length > 1 ? words[1] : "1";
+        String player2 = words.length > 1 ? words[2] : "2";
+        int rows = words.length == 6 ? number(words[3]) : Position.HEIGHT;
+        int columns = words.length == 6 ? number(words[4]) : Position.WIDTH;
+        int connect = words.length == 6 ? number(words[5]) : Position.CONNECT;
+        ConnectFour game = new ConnectFour(player1, player2, rows, columns, connect);
+        // logged under the game's lock, so it comes before any of its moves and is never missed by a snapshot
+        long ticket = registry.add(game, created -> log == null ? 0L
+                : log.appendCreate(created.getId(), player1, player2, rows, columns, connect));
+        awaitDurable(ticket);
+        return "OK " + game.getId();
+    }
+
+    /**
+     * Play a move and log it, holding the game's lock, then wait for the log.
+     * @param expected key of the position the move was chosen for, or null to play on any position.
+     * @return status of the game after the move.
+     */
+    private ConnectFour.Status move(long id, int column, Long expected){
+        long[] ticket = new long[1];
+        ConnectFour.Status status = registry.apply(id, game -> {
+            if(expected != null && (game.positionKey() != expected || game.getStatus() != ConnectFour.Status.PLAYING)){
+                throw new IllegalStateException("The game changed while the bot was thinking");
+            }
+            game.makeMove(column);
+            if(log != null){
+                try{
+                    ticket[0] = log.appendMove(id, column);
+                }catch(IllegalStateException e){
+                    game.undoMove();
+                    throw e;
+                }
+            }
+            return game.getStatus();
+        });
+        awaitDurable(ticket[0]);
+        return status;
+    }
+
+    /**
+     * Take back the last move of a game and log it, holding the game's lock, then wait for the log.
+     * @return column of the move taken back, counted from 1.
+     */
+    private int undo(long id){
+        long[] ticket = new long[1];
+        int column = registry.apply(id, game -> {
+            int col = game.undoMove();
+            if(log != null){
+                try{
+                    ticket[0] = log.appendUndo(id);
+                }catch(IllegalStateException e){
+                    game.makeMove(col);
+                    throw e;
+                }
+            }
+            return col;
+        });
+        awaitDurable(ticket[0]);
+        return column;
+    }
+
+    /**
+     * Stop hosting a game and log it.
+     */
+    private void end(long id){
+        long ticket = registry.remove(id, game -> log == null ? 0L : log.appendEnd(id));
+        awaitDurable(ticket);
+    }
+
+    /**
+     * Wait until a record of the log is on disk.
+     */
+    private void awaitDurable(long ticket){
+        if(log == null){
+            return;
+        }
+        try{
+            log.awaitDurable(ticket);
+        }catch(IOException e){
+            throw new IllegalStateException("Move log failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Let a bot choose a move on a copy of the position, then play it unless the game moved on meanwhile.
+     */
+    private String ai(long id, int millis){
+        Position position = registry.apply(id, game -> {
+            if(game.getStatus() != ConnectFour.Status.PLAYING){
+                throw new IllegalStateException("The game is over");
+            }
+            return game.getPosition();
+        });
+        int column = runner.chooseColumn(bots.get(), position, Budget.ofMillis(millis)) + 1;
+        return "OK " + column + " " + move(id, column, position.zobrist());
+    }
+
+    /**
+     * Status, current player and board of a game, cells as '.', '1' or '2'.
+     */
+    private static String state(ConnectFour game){
+        BoardView board = game.getBoardView();
+        StringBuilder state = new StringBuilder(game.getStatus().toString())
+                .append(' ').append(game.getCurrentPlayer().getName()).append(' ');
+        for(int row = 0; row < board.getRows(); row++){
+            if(row > 0){
+                state.append('/');
+            }
+            for(int col = 0; col < board.getColumns(); col++){
+                int cell = board.cellAt(row, col);
+                state.append(cell == 0 ? '.' : (char) ('0' + cell));
+            }
+        }
+        return state.toString();
+    }
+
+    private static void arguments(String[] words, int count){
+        if(words.length != count + 1){
+            throw new IllegalArgumentException(words[0].toUpperCase() + " takes " + count + (count == 1 ? " argument" : " arguments"));
+        }
+    }
+
+    private static long id(String word){
+        try{
+            return Long.parseLong(word);
+        }catch(NumberFormatException e){
+            throw new IllegalArgumentException("Bad game id " + word);
+        }
+    }
+
+    private static int number(String word){
+        try{
+            return Integer.parseInt(word);
+        }catch(NumberFormatException e){
+            throw new IllegalArgumentException("Bad number " + word);
+        }
+    }
+
+    /**
+     * Accept connections until the server is closed.
+     */
+    private void accept(){
+        while(!server.isClosed()){
+            try{
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                connections.execute(() -> serve(socket));
+            }catch(IOException e){
+                if(!server.isClosed()){
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Answer the requests of one connection until QUIT or the end of its input. Answers are
+     * flushed when no further request is waiting, so pipelined requests share a packet.
+     */
+    private void serve(Socket socket){
+        try(socket;
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))){
+            String request;
+            while((request = in.readLine()) != null){
+                if(request.isBlank()){
+                    continue;
+                }
+                String response = execute(request);
+                if(response == null){
+                    break;
+                }
+                out.write(response);
+                out.write('\n');
+                if(!in.ready()){
+                    out.flush();
+                }
+            }
+            out.flush();
+        }catch(SocketException e){
+            // the client went away or the server is closing
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }finally{
+            sockets.remove(socket);
+        }
+    }
+
+    /**
+     * Stop accepting connections and close the open ones. Hosted games stay in the registry.
+     */
+    @Override
+    public void close(){
+        try{
+            server.close();
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }finally{
+            for(Socket socket : sockets){
+                try{
+                    socket.close();
+                }catch(IOException e){
+                    // closing anyway
+                }
+            }
+            connections.shutdownNow();
+            runner.close();
+            synchronized(this){
+                if(snapshots != null){
+                    snapshots.shutdownNow();
+                }
+            }
+        }
+    }
+
+    /**
+     * Start a server and keep it running.
+     * @param args port to listen on, path of the move log and seconds between snapshots, if any.
+     * @throws IOException when the port cannot be bound or the log cannot be read or opened.
+     * @throws InterruptedException when interrupted while running.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException{
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        GameRegistry registry = new GameRegistry();
+        MoveLog log = null;
+        if(args.length > 1){
+            Path file = Paths.get(args[1]);
+            long start = System.nanoTime();
+            try{
+                int games = MoveLog.recover(file, registry, Runtime.getRuntime().availableProcessors());
+                System.out.printf("Recovered %d games in %d ms%n", games, (System.nanoTime() - start) / 1_000_000);
+            }catch(NoSuchFileException e){
+                // a new log
+            }
+            log = MoveLog.open(file);
+        }
+        GameServer server = new GameServer(port, registry, log);
+        if(log != null){
+            long seconds = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SNAPSHOT_SECONDS;
+            server.scheduleSnapshots(TimeUnit.SECONDS.toMillis(seconds));
+        }
+        System.out.println("Hosting games on " + server.server.getInetAddress().getHostAddress() + ":" + server.getPort());
+        Thread.currentThread().join();
+    }
+}
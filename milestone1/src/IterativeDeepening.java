@@ -0,0 +1,167 @@
+/**
+ * Search driver for players with a strict time per move. It runs the {@link Solver} one move
+ * deeper at a time and, when the deadline passes, abandons the running iteration and answers
+ * with the best column of the deepest one completed, so it never runs late whatever the position.
+ * Every iteration tries the previous best column first and starts with a narrow aspiration window
+ * around the previous score, widening it only when the score falls outside. The transposition
+ * table is kept between iterations and moves, so deeper iterations reuse earlier work.
+ * Example:
+ * <pre>
+ *         IterativeDeepening search = new IterativeDeepening();
+ *         long deadline = System.nanoTime() + 100_000_000L;   //100 ms from now
+ *         game.makeMove(search.bestColumn(game, deadline));
+ * </pre>
+ */
+public class IterativeDeepening {
+    /**
+     * Half width of the first window of an iteration around the score of the previous one.
+     */
+    public static final int ASPIRATION_WINDOW = 2;
+
+    private final Solver solver;
+    private int completedDepth;
+    /**
+     * Receiver of search counts and move latencies, or null.
+     */
+    private EngineMetrics metrics;
+
+    /**
+     * Create a driver with a 16 MB transposition table.
+     */
+    public IterativeDeepening(){
+        this(new TranspositionTable(1 << 20));
+    }
+
+    /**
+     * Create a driver using the given transposition table.
+     * @param table transposition table, kept across searches.
+     */
+    public IterativeDeepening(TranspositionTable table){
+        this.solver = new Solver(Solver.FULL_DEPTH, table);
+    }
+
+    /**
+     * Choose the column to play in the current position of a game before a deadline.
+     * @param game game to analyse, it is not modified.
+     * @param deadline {@link System#nanoTime()} by which the column must be chosen.
+     * @return column, counted from 1 like in {@link ConnectFour#makeMove(int)}.
+     * @throws IllegalStateException when the game is already over.
+     */
+    public int bestColumn(ConnectFour game, long deadline){
+        if(game.getStatus() != ConnectFour.Status.PLAYING){
+            throw new IllegalStateException("The game is over");
+        }
+        long start = metrics == null ? 0 : System.nanoTime();
+        int column = search(game.getPosition(), deadline).getColumn();
+        if(metrics != null){
+            metrics.getAiMoveLatency().record(System.nanoTime() - start);
+        }
+        return column;
+    }
+
+    /**
+     * Search a position until the deadline, or until its score is known.
+     * @param position position where neither player has won yet, it is not modified.
+     * @param deadline {@link System#nanoTime()} by which the search must return.
+     * @return best column and score of the deepest completed iteration. If not even the first
+     * iteration completes, the first playable column in center-first order with a score of 0.
+     * @throws IllegalStateException when the board is full.
+     */
+    public Solver.Result search(Position position, long deadline){
+        return search(position, deadline, null);
+    }
+
+    /**
+     * Search a position until its budget is exhausted, or until its score is known. The search
+     * honours the time and node limits of the budget, and stops when it is cancelled.
+     * @param position position where neither player has won yet, it is not modified.
+     * @param budget budget of the move, charged with the nodes visited.
+     * @return best column and score of the deepest completed iteration, like {@link #search(Position, long)}.
+     * @throws IllegalStateException when the board is full.
+     */
+    public Solver.Result search(Position position, Budget budget){
+        return search(position, budget.getDeadline(), budget);
+    }
+
+    private Solver.Result search(Position position, long deadline, Budget budget){
+        int remaining = position.cells() - position.moves();
+        if(remaining == 0){
+            throw new IllegalStateException("The board is full");
+        }
+        int minScore = Solver.minScore(position);
+        int maxScore = Solver.maxScore(position);
+        Solver.Result best = null;
+        for(int col : Solver.columnOrder(position.width())){
+            if(position.canPlay(col)){
+                best = new Solver.Result(0, col + 1, 0);
+                break;
+            }
+        }
+
+        completedDepth = 0;
+        long nodes = 0;
+        try{
+            for(int depth = 1; depth <= remaining && (budget == null || !budget.isExhausted()); depth++){
+                int alpha = minScore - 1;
+                int beta = maxScore + 1;
+                if(depth > 1){
+                    alpha = Math.max(alpha, best.getScore() - ASPIRATION_WINDOW);
+                    beta = Math.min(beta, best.getScore() + ASPIRATION_WINDOW);
+                }
+                GameEvents.SearchDepth event = new GameEvents.SearchDepth();
+                event.begin();
+                long depthNodes = nodes;
+                Solver.Result result;
+                while(true){
+                    result = solver.searchRoot(position, depth, alpha, beta, best.getColumn() - 1, deadline, budget);
+                    nodes += result.getNodes();
+                    if(result.getScore() <= alpha && alpha > minScore - 1){
+                        alpha = minScore - 1;
+                    }else if(result.getScore() >= beta && beta < maxScore + 1){
+                        beta = maxScore + 1;
+                    }else{
+                        break;
+                    }
+                }
+                if(metrics != null && depth > 1 && result.getColumn() != best.getColumn()){
+                    metrics.recordBestMoveChange(depth);
+                }
+                best = new Solver.Result(result.getScore(), result.getColumn(), nodes);
+                completedDepth = depth;
+                if(event.shouldCommit()){
+                    event.depth = depth;
+                    event.score = result.getScore();
+                    event.column = result.getColumn();
+                    event.nodes = nodes - depthNodes;
+                    event.positionKey = position.zobrist();
+                    event.commit();
+                }
+                // positions beyond the horizon score 0, so any other score is a proven win or loss
+                if(result.getScore() != 0){
+                    break;
+                }
+            }
+        }catch(Solver.TimeoutException e){
+            // keep the result of the last completed iteration
+        }
+        return new Solver.Result(best.getScore(), best.getColumn(), nodes);
+    }
+
+    /**
+     * Set where the counts of every iteration, the best move changes and the time taken by
+     * {@link #bestColumn(ConnectFour, long)} are recorded. Metrics are off by default.
+     * @param metrics metrics receiving the counts, null to turn them off.
+     */
+    public void setMetrics(EngineMetrics metrics){
+        this.metrics = metrics;
+        solver.setMetrics(metrics);
+    }
+
+    /**
+     * Get the depth of the last completed iteration of the last search.
+     * @return number of moves looked ahead, 0 if no iteration completed.
+     */
+    public int getCompletedDepth(){
+        return completedDepth;
+    }
+}
@@ -0,0 +1,146 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds with HDR-style buckets: values below 64 get a bucket each,
+ * and every power of two above is split into 32 buckets, so any recorded value is known within
+ * about 3% however large it is, with a fixed array of 1888 counts.
+ * Counts are striped: every thread increments its own copy of the buckets, picked from its id,
+ * so threads recording at the same time do not fight over cache lines. Reading sums the stripes.
+ * Example:
+ * <pre>
+ *         LatencyHistogram histogram = new LatencyHistogram();
+ *         long start = System.nanoTime();
+ *         game.makeMove(4);
+ *         histogram.record(System.nanoTime() - start);
+ *         System.out.println(histogram.valueAtPercentile(99));   //99th percentile in ns
+ * </pre>
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    /**
+     * Number of copies of the buckets, a power of two at least the number of cores, at most 64.
+     */
+    private static final int STRIPES = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record one duration.
+     * @param nanos duration in nanoseconds, negative values count as 0.
+     */
+    public void record(long nanos){
+        long value = Math.max(0, nanos);
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.getAndIncrement(stripe * BUCKETS + bucket(value));
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Get the number of durations recorded.
+     * @return count.
+     */
+    public long count(){
+        long count = 0;
+        for(int i = 0; i < counts.length(); i++){
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Get the largest duration recorded.
+     * @return maximum in nanoseconds, 0 if nothing was recorded.
+     */
+    public long max(){
+        return max.get();
+    }
+
+    /**
+     * Get the average duration.
+     * @return mean in nanoseconds, 0 if nothing was recorded.
+     */
+    public double mean(){
+        long count = count();
+        return count == 0 ? 0 : (double) total.sum() / count;
+    }
+
+    /**
+     * Get the duration below which a given share of the recorded durations fall, within the
+     * precision of a bucket.
+     * @param percentile share of the durations, [0, 100] inclusive.
+     * @return largest value of the bucket holding that percentile in nanoseconds, 0 if nothing was recorded.
+     */
+    public long valueAtPercentile(double percentile){
+        long[] merged = new long[BUCKETS];
+        long count = 0;
+        for(int i = 0; i < counts.length(); i++){
+            long n = counts.get(i);
+            merged[i % BUCKETS] += n;
+            count += n;
+        }
+        if(count == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++){
+            seen += merged[bucket];
+            if(seen >= rank){
+                return bucket + 1 == BUCKETS ? max() : Math.min(lowestValue(bucket + 1) - 1, max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * Forget every recorded duration. Durations recorded at the same time may be partly kept.
+     */
+    public void reset(){
+        for(int i = 0; i < counts.length(); i++){
+            counts.set(i, 0);
+        }
+        total.reset();
+        max.reset();
+    }
+
+    /**
+     * Get a one-line summary of the recorded durations in microseconds.
+     * @return count, mean and percentiles.
+     */
+    @Override
+    public String toString(){
+        return String.format("count=%d mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                count(), mean() / 1e3, valueAtPercentile(50) / 1e3, valueAtPercentile(99) / 1e3,
+                valueAtPercentile(99.9) / 1e3, max() / 1e3);
+    }
+
+    /**
+     * Index of the bucket of a value: the value itself below 2 * SUB_BUCKETS, then SUB_BUCKETS
+     * buckets per power of two, indexed by the bits just below the highest one.
+     */
+    static int bucket(long value){
+        if(value < 2 * SUB_BUCKETS){
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Smallest value falling into a bucket.
+     */
+    static long lowestValue(int bucket){
+        if(bucket < 2 * SUB_BUCKETS){
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+}
@@ -1,28 +1,84 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Scanner;
+
 public class Main {
+  /**
+   * Compute the AI may spend on a move.
+   */
+  private static final Budget AI_BUDGET = Budget.ofMillis(1000);
+  /**
+   * Opening book used when no path is given on the command line.
+   */
+  private static final String DEFAULT_BOOK = "opening.book";
+
   public static void main(String args[]) {
     String playerName1 = "Lisa";
     String playerName2 = "AI";
     ConnectFour game = new ConnectFour(playerName1, playerName2);
+    OpeningBook book = openBook(Paths.get(args.length > 0 ? args[0] : DEFAULT_BOOK));
+    Bot ai = Bot.solver(book);
+    BotRunner runner = new BotRunner();
+    Scanner scanner = new Scanner(System.in);
 
     while (game.getStatus() == ConnectFour.Status.PLAYING) {
       ConnectFour.Player currentPlayer = game.getCurrentPlayer();
+      System.out.println("The current player is "+currentPlayer.getName()); //prints "The current player is Lisa"
 
-      if (currentPlayer.name == "AI") {
-        // do ranodm stuff
+      if (currentPlayer.getName().equals(playerName2)) {
+        int column = runner.chooseColumn(ai, game.getPosition(), AI_BUDGET) + 1;
+        System.out.println(playerName2 + " plays column " + column);
+        game.makeMove(column);
+      } else {
+        System.out.print("Choose a column from 1 to 7: ");
+        if (!scanner.hasNextInt()) {
+          runner.close();
+          return;
+        }
+        try {
+          game.makeMove(scanner.nextInt());
+        } catch (IllegalArgumentException e) {
+          System.out.println(e.getMessage());
+          continue;
+        }
       }
-      
-      System.out.println("The current player is "+currentPlayer.getName()); //prints "The current player is Lisa"
 
-      game.makeMove(column);
-      int[][] board = game.getBoard(); //prints board after dropping checker into first column
+      printBoard(game.getBoardView());
       System.out.println(game.getStatus());  //prints PLAYING
+    }
 
-      if (game.getStatus() == PLAYER_1_WIN)
-      System.out.println"
+    runner.close();
+    if (game.getStatus() == ConnectFour.Status.PLAYER_1_WINS) {
+      System.out.println(playerName1 + " wins!");
+    } else if (game.getStatus() == ConnectFour.Status.PLAYER_2_WINS) {
+      System.out.println(playerName2 + " wins!");
+    } else {
+      System.out.println("Draw!");
+    }
+  }
+
+  private static OpeningBook openBook(Path file) {
+    if (!Files.exists(file)) {
+      return null;
+    }
+    try {
+      return OpeningBook.open(file);
+    } catch (IOException e) {
+      System.out.println("Cannot read opening book " + file + ": " + e.getMessage());
+      return null;
     }
   }
-}
 
-=======
-PLAYING
-=======
\ No newline at end of file
+  private static void printBoard(BoardView board) {
+    for (int row = 0; row < board.getRows(); row++) {
+      StringBuilder line = new StringBuilder("|");
+      for (int col = 0; col < board.getColumns(); col++) {
+        int cell = board.cellAt(row, col);
+        line.append(cell == 0 ? ' ' : cell == 1 ? 'X' : 'O').append('|');
+      }
+      System.out.println(line);
+    }
+  }
+}
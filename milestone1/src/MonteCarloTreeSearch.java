@@ -0,0 +1,368 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Connect 4 player using Monte Carlo tree search. Instead of solving the position, it plays a fixed
+ * number of random games (playouts) from it, growing a tree towards the moves that win most often,
+ * and picks the column that was explored the most. Its strength and its cost per move are set by
+ * the playout budget, whatever the position.
+ * <p>
+ * Every thread grows its own tree from the same root and the trees are merged at the end (root
+ * parallelization), so threads never wait for each other. Tree nodes live in arrays allocated once
+ * per thread, playouts run on a reused {@link Position} with a per-thread {@link SplittableRandom},
+ * so searching allocates nothing per playout.
+ * Example:
+ * <pre>
+ *         try (MonteCarloTreeSearch mcts = new MonteCarloTreeSearch(20000, 4)) {
+ *             game.makeMove(mcts.bestColumn(game));
+ *         }
+ * </pre>
+ */
+public class MonteCarloTreeSearch implements AutoCloseable {
+    /**
+     * Exploration constant of the UCT formula, sqrt(2) in theory.
+     */
+    public static final double DEFAULT_EXPLORATION = 1.4;
+
+    /**
+     * Number of playouts between two charges of the budget, minus one.
+     */
+    private static final int BUDGET_CHECK_MASK = 63;
+
+    private final int playouts;
+    private final double exploration;
+    private final Tree[] trees;
+    private final ExecutorService pool;
+    /**
+     * Receiver of move latencies, or null.
+     */
+    private EngineMetrics metrics;
+
+    /**
+     * Create a search running on the calling thread.
+     * @param playouts number of playouts per move, at least 1.
+     */
+    public MonteCarloTreeSearch(int playouts){
+        this(playouts, 1);
+    }
+
+    /**
+     * Create a search spread over several threads.
+     * @param playouts number of playouts per move, shared by all threads, at least 1.
+     * @param threads number of threads, at least 1.
+     */
+    public MonteCarloTreeSearch(int playouts, int threads){
+        this(playouts, threads, DEFAULT_EXPLORATION, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Create a search spread over several threads.
+     * @param playouts number of playouts per move, shared by all threads, at least 1.
+     * @param threads number of threads, at least 1.
+     * @param exploration exploration constant of the UCT formula, higher explores more.
+     * @param seed seed of the random playouts, the same seed gives the same games on one thread.
+     * @throws IllegalArgumentException when playouts or threads is smaller than 1.
+     */
+    public MonteCarloTreeSearch(int playouts, int threads, double exploration, long seed){
+        if(playouts < 1 || threads < 1){
+            throw new IllegalArgumentException("Playouts and threads must be at least 1");
+        }
+        this.playouts = playouts;
+        this.exploration = exploration;
+        this.trees = new Tree[threads];
+        SplittableRandom random = new SplittableRandom(seed);
+        int perThread = (playouts + threads - 1) / threads;
+        for(int i = 0; i < threads; i++){
+            // every playout adds at most one node and its children; wider boards stop growing the tree earlier
+            trees[i] = new Tree(perThread * Position.WIDTH + Position.MAX_SIZE + 1, random.split());
+        }
+        this.pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+    }
+
+    /**
+     * Choose the column to play in the current position of a game.
+     * @param game game to analyse, it is not modified.
+     * @return column, counted from 1 like in {@link ConnectFour#makeMove(int)}.
+     * @throws IllegalStateException when the game is already over.
+     */
+    public int bestColumn(ConnectFour game){
+        if(game.getStatus() != ConnectFour.Status.PLAYING){
+            throw new IllegalStateException("The game is over");
+        }
+        long start = metrics == null ? 0 : System.nanoTime();
+        int column = bestColumn(game.getPosition()) + 1;
+        if(metrics != null){
+            metrics.getAiMoveLatency().record(System.nanoTime() - start);
+        }
+        return column;
+    }
+
+    /**
+     * Choose the column to play in a position where neither player has won yet.
+     * @param position position to analyse, it is not modified.
+     * @return column index, [0, width()).
+     * @throws IllegalStateException when the board is full.
+     */
+    public int bestColumn(Position position){
+        return bestColumn(position, playouts, null);
+    }
+
+    /**
+     * Choose the column to play in a position where neither player has won yet, within a budget.
+     * The search honours the time and playout limits of the budget, and stops when it is cancelled;
+     * it may then play more playouts than given to the constructor, the tree simply stops growing.
+     * A budget with neither limit gets the playouts given to the constructor.
+     * @param position position to analyse, it is not modified.
+     * @param budget budget of the move, charged with the playouts played.
+     * @return column index, [0, width()).
+     * @throws IllegalStateException when the board is full.
+     */
+    public int bestColumn(Position position, Budget budget){
+        boolean limited = budget.hasTimeLimit() || budget.getPlayouts() != Budget.UNLIMITED;
+        return bestColumn(position, limited ? budget.getPlayouts() : playouts, budget);
+    }
+
+    private int bestColumn(Position position, long playouts, Budget budget){
+        if(position.moves() == position.cells()){
+            throw new IllegalStateException("The board is full");
+        }
+        int[] order = Solver.columnOrder(position.width());
+        for(int col : order){
+            if(position.canPlay(col) && position.isWinningMove(col)){
+                return col;
+            }
+        }
+
+        int threads = trees.length;
+        if(threads == 1){
+            trees[0].search(position, playouts, budget);
+        }else{
+            Future<?>[] results = new Future<?>[threads];
+            for(int i = 0; i < threads; i++){
+                Tree tree = trees[i];
+                long share = playouts / threads + (i < playouts % threads ? 1 : 0);
+                results[i] = pool.submit(() -> tree.search(position, share, budget));
+            }
+            try{
+                for(Future<?> result : results){
+                    result.get();
+                }
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Search interrupted", e);
+            }catch(ExecutionException e){
+                throw new IllegalStateException("Search failed", e.getCause());
+            }
+        }
+
+        long[] visits = new long[position.width()];
+        for(Tree tree : trees){
+            tree.addRootVisits(visits);
+        }
+        int best = -1;
+        for(int col : order){
+            if(position.canPlay(col) && (best < 0 || visits[col] > visits[best])){
+                best = col;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Set where the time taken by {@link #bestColumn(ConnectFour)} is recorded. Metrics are off by default.
+     * @param metrics metrics receiving the latencies, null to turn them off.
+     */
+    public void setMetrics(EngineMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    /**
+     * Stop the threads of the search.
+     */
+    @Override
+    public void close(){
+        if(pool != null){
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Search tree of one thread. Node i is described by the i-th element of every array, node 0 is the root.
+     * Rewards are stored from the point of view of the player who made the move leading to the node.
+     */
+    private final class Tree {
+        private final int capacity;
+        private final int[] visits;
+        private final double[] rewards;
+        private final int[] firstChild;
+        private final byte[] childCount;
+        private final byte[] column;
+        /**
+         * Outcome of the game at the node: 0 still playing, 1 won by the player who moved there, 2 draw.
+         */
+        private final byte[] terminal;
+        private int[] path;
+        /**
+         * Position the playouts run on, replaced only when the board size changes.
+         */
+        private Position scratch;
+        private final SplittableRandom random;
+        private int size;
+
+        Tree(int capacity, SplittableRandom random){
+            this.capacity = capacity;
+            this.visits = new int[capacity];
+            this.rewards = new double[capacity];
+            this.firstChild = new int[capacity];
+            this.childCount = new byte[capacity];
+            this.column = new byte[capacity];
+            this.terminal = new byte[capacity];
+            this.random = random;
+        }
+
+        /**
+         * Play playouts from the root, stopping early when the budget, if any, is exhausted.
+         */
+        void search(Position root, long count, Budget budget){
+            if(scratch == null || !scratch.sameSize(root)){
+                scratch = root.copy();
+                path = new int[root.cells() + 1];
+            }
+            size = 1;
+            clear(0, -1);
+            long played = 0;
+            while(played < count){
+                playout(root);
+                if((++played & BUDGET_CHECK_MASK) == 0 && budget != null && budget.spendPlayouts(BUDGET_CHECK_MASK + 1)){
+                    return;
+                }
+            }
+            if(budget != null){
+                budget.spendPlayouts(played & BUDGET_CHECK_MASK);
+            }
+        }
+
+        void addRootVisits(long[] total){
+            for(int i = 0; i < childCount[0]; i++){
+                int child = firstChild[0] + i;
+                total[column[child]] += visits[child];
+            }
+        }
+
+        private void clear(int node, int col){
+            visits[node] = 0;
+            rewards[node] = 0;
+            childCount[node] = 0;
+            column[node] = (byte) col;
+            terminal[node] = 0;
+        }
+
+        /**
+         * Select a leaf, expand it, play a random game from it and back the result up.
+         */
+        private void playout(Position root){
+            Position position = scratch;
+            position.copyFrom(root);
+            int node = 0;
+            int depth = 0;
+            path[0] = 0;
+            while(childCount[node] > 0){
+                node = select(node);
+                position.play(column[node]);
+                path[++depth] = node;
+            }
+
+            double reward;
+            if(terminal[node] == 1){
+                reward = 1;
+            }else if(terminal[node] == 2){
+                reward = 0.5;
+            }else{
+                if(visits[node] > 0 && expand(node, position)){
+                    node = firstChild[node] + random.nextInt(childCount[node]);
+                    path[++depth] = node;
+                    if(terminal[node] == 0){
+                        position.play(column[node]);
+                    }
+                }
+                reward = terminal[node] == 1 ? 1 : terminal[node] == 2 ? 0.5 : 1 - rollout(position);
+            }
+
+            for(int i = depth; i >= 0; i--){
+                int n = path[i];
+                visits[n]++;
+                rewards[n] += reward;
+                reward = 1 - reward;
+            }
+        }
+
+        /**
+         * Pick the child with the best UCT value, unvisited children first.
+         */
+        private int select(int node){
+            double logVisits = Math.log(visits[node]);
+            int best = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            int first = firstChild[node];
+            for(int child = first; child < first + childCount[node]; child++){
+                if(visits[child] == 0){
+                    return child;
+                }
+                double value = rewards[child] / visits[child] + exploration * Math.sqrt(logVisits / visits[child]);
+                if(value > bestValue){
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Add the children of a node, unless the arena is full.
+         * @return true if the node has children.
+         */
+        private boolean expand(int node, Position position){
+            int width = position.width();
+            if(size + width > capacity){
+                return false;
+            }
+            firstChild[node] = size;
+            int count = 0;
+            boolean full = position.moves() == position.cells() - 1;
+            for(int col = 0; col < width; col++){
+                if(position.canPlay(col)){
+                    int child = size++;
+                    clear(child, col);
+                    terminal[child] = (byte) (position.isWinningMove(col) ? 1 : full ? 2 : 0);
+                    count++;
+                }
+            }
+            childCount[node] = (byte) count;
+            return count > 0;
+        }
+
+        /**
+         * Play random moves until the game ends.
+         * @return 1 if the player to move at the start wins, 0 if they lose, 0.5 for a draw.
+         */
+        private double rollout(Position position){
+            int start = position.moves();
+            int cells = position.cells();
+            int width = position.width();
+            while(position.moves() < cells){
+                int col = random.nextInt(width);
+                if(!position.canPlay(col)){
+                    continue;
+                }
+                if(position.isWinningMove(col)){
+                    return ((position.moves() - start) & 1) == 0 ? 1 : 0;
+                }
+                position.play(col);
+            }
+            return 0.5;
+        }
+    }
+}
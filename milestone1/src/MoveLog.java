@@ -0,0 +1,958 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only write-ahead log of the moves of hosted games, so that games in progress survive a
+ * crash. A move takes two or three bytes: the game id as a varint and a column byte.
+ * Appending only copies the record into the open batch and returns a ticket; a background thread
+ * writes whole batches, each followed by one {@code fsync}, and {@link #awaitDurable(long)} blocks
+ * until the batch of a ticket is on disk. Records appended while a batch is being synced form the
+ * next batch, so under load one {@code fsync} covers the moves of many games at once, with no
+ * timer: an idle log syncs a lone move immediately.
+ * Records of one game must be appended in the order they happened, for instance while holding the
+ * lock of the game, see {@link GameServer}.
+ * <p>
+ * So that a restart does not replay every game from its first move, {@link #snapshot(GameRegistry)}
+ * starts a new segment of the log, the file name followed by the snapshot number, and appends the
+ * full state of every live game to it, each while holding the game's lock: games keep playing
+ * meanwhile, and each game's snapshot lands between its earlier and later records. Once the
+ * snapshot is on disk the older segments are deleted. {@link #recover(Path, GameRegistry, int)}
+ * reads only the segments from the last complete snapshot on, then rebuilds the games in parallel.
+ * <p>
+ * Segment layout, all fixed-size numbers big-endian:
+ * <pre>
+ *         int     magic "C4WL"
+ *         int     format version
+ *         batches, each:
+ *         int     payload length n
+ *         int     CRC-32C of the payload
+ *         n       records, each a varint game id (7 bits per byte, low bits first) followed by a tag:
+ *                 0-14    move in that column, counted from 0
+ *                 0x40    undo of the last move
+ *                 0x41    end: the game is no longer hosted
+ *                 0x42    creation, followed by bytes rows, columns, connect and the two player
+ *                         names, each a varint length and UTF-8 bytes
+ *                 0x43    snapshot of a game: as a creation, then a varint move count and the
+ *                         columns of the moves counted from 0, two per byte, low bits first
+ *                 0x44    start of snapshot "game id", followed by a varint of the highest game
+ *                         id given so far; first record of its segment
+ *                 0x45    end of snapshot "game id"
+ * </pre>
+ * A batch cut short by a crash fails its length or CRC check; reading stops there, and opening the
+ * log for writing cuts the file back to the last whole batch.
+ * Example:
+ * <pre>
+ *         try (MoveLog log = MoveLog.open(Paths.get("moves.log"))) {
+ *             long ticket = log.appendMove(game.getId(), 4);
+ *             log.awaitDurable(ticket);   //the move survives a crash from here on
+ *             log.snapshot(registry);     //from time to time
+ *         }
+ *         MoveLog.recover(Paths.get("moves.log"), registry, 8);
+ * </pre>
+ */
+public class MoveLog implements AutoCloseable {
+    private static final int MAGIC = 0x4334574C;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 8;
+    private static final int FRAME_HEADER_BYTES = 8;
+    static final int UNDO = 0x40;
+    static final int END = 0x41;
+    static final int CREATE = 0x42;
+    static final int SNAPSHOT = 0x43;
+    static final int SNAPSHOT_START = 0x44;
+    static final int SNAPSHOT_END = 0x45;
+
+    /**
+     * Receiver of the records of a log, in the order they were appended.
+     */
+    public interface Visitor {
+        /**
+         * A game was created.
+         * @param game id of the game.
+         * @param playerName1 player 1's name.
+         * @param playerName2 player 2's name.
+         * @param rows number of rows.
+         * @param columns number of columns.
+         * @param connect number of checkers in a line to win.
+         */
+        default void created(long game, String playerName1, String playerName2, int rows, int columns, int connect){
+        }
+
+        /**
+         * A move was played.
+         * @param game id of the game.
+         * @param column column of the move, counted from 1.
+         */
+        default void moved(long game, int column){
+        }
+
+        /**
+         * The last move of a game was taken back.
+         * @param game id of the game.
+         */
+        default void undone(long game){
+        }
+
+        /**
+         * A game is no longer hosted.
+         * @param game id of the game.
+         */
+        default void ended(long game){
+        }
+
+        /**
+         * The state of a game was saved by a snapshot, and replaces whatever came before.
+         * @param game id of the game.
+         * @param playerName1 player 1's name.
+         * @param playerName2 player 2's name.
+         * @param rows number of rows.
+         * @param columns number of columns.
+         * @param connect number of checkers in a line to win.
+         * @param moves columns of the moves played, counted from 1, in order.
+         */
+        default void restored(long game, String playerName1, String playerName2, int rows, int columns, int connect, int[] moves){
+        }
+
+        /**
+         * A snapshot started.
+         * @param snapshot number of the snapshot.
+         * @param lastGameId highest game id given when it started.
+         */
+        default void snapshotStarted(long snapshot, long lastGameId){
+        }
+
+        /**
+         * A snapshot ended: every game live when it started was saved, or ended.
+         * @param snapshot number of the snapshot.
+         */
+        default void snapshotEnded(long snapshot){
+        }
+    }
+
+    /**
+     * Records of one game to replay during recovery.
+     */
+    private static final class Replay {
+        final String playerName1;
+        final String playerName2;
+        final int rows;
+        final int columns;
+        final int connect;
+        /**
+         * Moves counted from 0 and {@link #UNDO}s.
+         */
+        byte[] steps;
+        int size;
+
+        Replay(String playerName1, String playerName2, int rows, int columns, int connect, byte[] steps){
+            this.playerName1 = playerName1;
+            this.playerName2 = playerName2;
+            this.rows = rows;
+            this.columns = columns;
+            this.connect = connect;
+            this.steps = steps;
+            this.size = steps.length;
+        }
+
+        void add(int step){
+            if(size == steps.length){
+                steps = Arrays.copyOf(steps, size * 2 + 8);
+            }
+            steps[size++] = (byte) step;
+        }
+
+        /**
+         * Rebuild the game.
+         * @throws IllegalArgumentException when a move is not legal.
+         * @throws IllegalStateException when there is no move to undo.
+         */
+        ConnectFour play(long id){
+            ConnectFour game = new ConnectFour(playerName1, playerName2, rows, columns, connect, id);
+            for(int i = 0; i < size; i++){
+                if(steps[i] == UNDO){
+                    game.undoMove();
+                }else{
+                    game.makeMove(steps[i] + 1);
+                }
+            }
+            return game;
+        }
+    }
+
+    /**
+     * Path of the first segment; the others add their number.
+     */
+    private final Path file;
+    /**
+     * Segment being written; only the flusher touches it once started.
+     */
+    private FileChannel channel;
+    private long segment;
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Signalled when the open batch gets its first record, or the log is closing.
+     */
+    private final Condition pending = lock.newCondition();
+    /**
+     * Signalled when a batch is on disk, or writing failed.
+     */
+    private final Condition durable = lock.newCondition();
+    private final Thread flusher;
+    /**
+     * Records of the open batch, starting after room for the frame header.
+     */
+    private byte[] batch = new byte[4096];
+    private int batchSize = FRAME_HEADER_BYTES;
+    /**
+     * Buffer of the batch being written, reused for the next open batch.
+     */
+    private byte[] spare = new byte[4096];
+    /**
+     * Offset in the open batch where a new segment starts, with room for a frame header, 0 when it
+     * starts the batch, or -1.
+     */
+    private int batchSplit = -1;
+    /**
+     * Number of the next segment, and of the snapshot starting it.
+     */
+    private long nextSegment;
+    /**
+     * Held while taking a snapshot, so that they do not overlap.
+     */
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private long openBatch = 1;
+    private long durableBatch;
+    private long batches;
+    private long records;
+    private IOException failure;
+    private boolean closed;
+
+    private MoveLog(Path file, FileChannel channel, long segment){
+        this.file = file;
+        this.channel = channel;
+        this.segment = segment;
+        this.nextSegment = segment + 1;
+        this.flusher = new Thread(this::flush, "move-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Open a log for appending to its last segment, creating it if needed. A batch cut short by a
+     * crash at the end of an existing log is removed.
+     * @param file path of the log.
+     * @return the log, ready for appends.
+     * @throws IOException when the file cannot be opened or is not a move log.
+     */
+    public static MoveLog open(Path file) throws IOException{
+        long[] segments = segments(file);
+        long last = segments.length == 0 ? 0 : segments[segments.length - 1];
+        FileChannel channel = FileChannel.open(segment(file, last), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try{
+            if(channel.size() < HEADER_BYTES){
+                // new, or created by a snapshot that crashed before writing anything
+                channel.truncate(0);
+                writeHeader(channel);
+            }else{
+                long end = read(Channels.newInputStream(channel.position(0)), channel.size(), null);
+                channel.truncate(end);
+                channel.force(true);
+            }
+            channel.position(channel.size());
+            return new MoveLog(file, channel, last);
+        }catch(IOException | RuntimeException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read every whole batch of a log from its last complete snapshot on, or from the start when
+     * there is none.
+     * @param file path of the log.
+     * @param visitor receiver of the records.
+     * @throws IOException when the file cannot be read or is not a move log.
+     */
+    public static void replay(Path file, Visitor visitor) throws IOException{
+        long[] segments = segments(file);
+        if(segments.length == 0){
+            throw new NoSuchFileException(file.toString());
+        }
+        int first = 0;
+        for(int i = segments.length - 1; i > 0; i--){
+            long snapshot = segments[i];
+            boolean[] complete = new boolean[1];
+            readSegment(segment(file, snapshot), new Visitor(){
+                @Override
+                public void snapshotEnded(long number){
+                    complete[0] |= number == snapshot;
+                }
+            });
+            if(complete[0]){
+                first = i;
+                break;
+            }
+        }
+        for(int i = first; i < segments.length; i++){
+            readSegment(segment(file, segments[i]), visitor);
+        }
+    }
+
+    /**
+     * Rebuild the games of a log still hosted when it was last written: load them from the last
+     * complete snapshot, replay the records after it, then rebuild each game on its own, in parallel.
+     * Recovered games keep their ids, and new games get higher ones.
+     * @param file path of the log.
+     * @param registry registry receiving the games, with none of their ids.
+     * @param threads number of threads rebuilding games.
+     * @return number of games recovered.
+     * @throws IOException when the log cannot be read, or its records do not replay.
+     */
+    public static int recover(Path file, GameRegistry registry, int threads) throws IOException{
+        Map<Long, Replay> games = new HashMap<>();
+        long[] lastGameId = new long[1];
+        replay(file, new Visitor(){
+            @Override
+            public void created(long game, String playerName1, String playerName2, int rows, int columns, int connect){
+                games.put(game, new Replay(playerName1, playerName2, rows, columns, connect, new byte[0]));
+                lastGameId[0] = Math.max(lastGameId[0], game);
+            }
+
+            @Override
+            public void restored(long game, String playerName1, String playerName2, int rows, int columns, int connect, int[] moves){
+                byte[] steps = new byte[moves.length];
+                for(int i = 0; i < moves.length; i++){
+                    steps[i] = (byte) (moves[i] - 1);
+                }
+                games.put(game, new Replay(playerName1, playerName2, rows, columns, connect, steps));
+                lastGameId[0] = Math.max(lastGameId[0], game);
+            }
+
+            @Override
+            public void moved(long game, int column){
+                Replay replay = games.get(game);
+                // records of a game saved further on in the snapshot
+                if(replay != null){
+                    replay.add(column - 1);
+                }
+            }
+
+            @Override
+            public void undone(long game){
+                Replay replay = games.get(game);
+                if(replay != null){
+                    replay.add(UNDO);
+                }
+            }
+
+            @Override
+            public void ended(long game){
+                games.remove(game);
+            }
+
+            @Override
+            public void snapshotStarted(long snapshot, long gameId){
+                lastGameId[0] = Math.max(lastGameId[0], gameId);
+            }
+        });
+        GameEvents.reserveGameIds(lastGameId[0]);
+
+        List<Map.Entry<Long, Replay>> entries = new ArrayList<>(games.entrySet());
+        int tasks = Math.max(1, Math.min(entries.size(), threads * 4));
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try{
+            List<Future<?>> done = new ArrayList<>();
+            for(int task = 0; task < tasks; task++){
+                int from = (int) ((long) entries.size() * task / tasks);
+                int to = (int) ((long) entries.size() * (task + 1) / tasks);
+                done.add(pool.submit(() -> {
+                    for(int i = from; i < to; i++){
+                        long id = entries.get(i).getKey();
+                        try{
+                            registry.add(entries.get(i).getValue().play(id));
+                        }catch(IllegalArgumentException | IllegalStateException e){
+                            throw new IllegalStateException("Game " + id + ": " + e.getMessage(), e);
+                        }
+                    }
+                }));
+            }
+            for(Future<?> future : done){
+                future.get();
+            }
+        }catch(ExecutionException e){
+            throw new IOException("Move log does not replay: " + e.getCause().getMessage(), e.getCause());
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while recovering games");
+        }finally{
+            pool.shutdownNow();
+        }
+        return entries.size();
+    }
+
+    /**
+     * Save every game of a registry in a new segment, then delete the older segments. Games can be
+     * played meanwhile, and their records are kept in order; only one snapshot runs at a time.
+     * @param registry games to save, whose changes are all logged here.
+     * @throws IOException when writing the log failed.
+     * @throws IllegalStateException when the log is closed or failed.
+     */
+    public void snapshot(GameRegistry registry) throws IOException{
+        snapshotLock.lock();
+        try{
+            long number;
+            lock.lock();
+            try{
+                int start = reserve(FRAME_HEADER_BYTES + 10 + 1 + 10);
+                if(batchSize > FRAME_HEADER_BYTES){
+                    // records so far end the current segment; room for the header of the next frame
+                    batchSplit = batchSize;
+                    batchSize += FRAME_HEADER_BYTES;
+                    start = batchSize;
+                }else{
+                    batchSplit = 0;
+                }
+                number = nextSegment++;
+                int at = putVarint(batch, start, number);
+                batch[at++] = SNAPSHOT_START;
+                at = putVarint(batch, at, GameEvents.lastGameId());
+                commit(start, at);
+            }finally{
+                lock.unlock();
+            }
+            registry.forEach(this::appendSnapshot);
+            awaitDurable(append(number, SNAPSHOT_END));
+            for(long old : segments(file)){
+                if(old < number){
+                    Files.deleteIfExists(segment(file, old));
+                }
+            }
+        }finally{
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Append the creation of a game, before any of its moves.
+     * @param game id of the game.
+     * @param playerName1 player 1's name.
+     * @param playerName2 player 2's name.
+     * @param rows number of rows.
+     * @param columns number of columns.
+     * @param connect number of checkers in a line to win.
+     * @return ticket of the record, see {@link #awaitDurable(long)}.
+     * @throws IllegalStateException when the log is closed or failed.
+     */
+    public long appendCreate(long game, String playerName1, String playerName2, int rows, int columns, int connect){
+        byte[] name1 = playerName1.getBytes(StandardCharsets.UTF_8);
+        byte[] name2 = playerName2.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try{
+            int start = reserve(10 + 4 + 2 * 5 + name1.length + name2.length);
+            int at = putVarint(batch, start, game);
+            batch[at++] = CREATE;
+            at = putGame(batch, at, rows, columns, connect, name1, name2);
+            return commit(start, at);
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Append the state of a game to a snapshot, holding the game's lock.
+     */
+    private void appendSnapshot(ConnectFour game){
+        byte[] name1 = game.getPlayerName(1).getBytes(StandardCharsets.UTF_8);
+        byte[] name2 = game.getPlayerName(2).getBytes(StandardCharsets.UTF_8);
+        byte[] moves = game.moveHistory();
+        BoardView board = game.getBoardView();
+        lock.lock();
+        try{
+            int start = reserve(10 + 4 + 3 * 5 + name1.length + name2.length + (moves.length + 1) / 2);
+            int at = putVarint(batch, start, game.getId());
+            batch[at++] = SNAPSHOT;
+            at = putGame(batch, at, board.getRows(), board.getColumns(), game.getConnect(), name1, name2);
+            at = putVarint(batch, at, moves.length);
+            for(int i = 0; i < moves.length; i += 2){
+                batch[at++] = (byte) (moves[i] | (i + 1 < moves.length ? moves[i + 1] << 4 : 0));
+            }
+            commit(start, at);
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Append a move.
+     * @param game id of the game.
+     * @param column column of the move, counted from 1, [1, 15] inclusive.
+     * @return ticket of the record, see {@link #awaitDurable(long)}.
+     * @throws IllegalArgumentException when the column is out of range.
+     * @throws IllegalStateException when the log is closed or failed.
+     */
+    public long appendMove(long game, int column){
+        if(column < 1 || column > Position.MAX_SIZE){
+            throw new IllegalArgumentException("Column out of range: " + column);
+        }
+        return append(game, column - 1);
+    }
+
+    /**
+     * Append the undo of the last move of a game.
+     * @param game id of the game.
+     * @return ticket of the record, see {@link #awaitDurable(long)}.
+     * @throws IllegalStateException when the log is closed or failed.
+     */
+    public long appendUndo(long game){
+        return append(game, UNDO);
+    }
+
+    /**
+     * Append the end of a game: it is no longer hosted and its records can be forgotten.
+     * @param game id of the game.
+     * @return ticket of the record, see {@link #awaitDurable(long)}.
+     * @throws IllegalStateException when the log is closed or failed.
+     */
+    public long appendEnd(long game){
+        return append(game, END);
+    }
+
+    private long append(long game, int tag){
+        lock.lock();
+        try{
+            int start = reserve(11);
+            int at = putVarint(batch, start, game);
+            batch[at++] = (byte) tag;
+            return commit(start, at);
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Make room for a record in the open batch, holding the lock.
+     * @param bytes largest size of the record.
+     * @return offset of the record.
+     */
+    private int reserve(int bytes){
+        if(closed || failure != null){
+            throw new IllegalStateException("Move log is " + (closed ? "closed" : "failed"), failure);
+        }
+        if(batchSize + bytes > batch.length){
+            byte[] larger = new byte[Math.max(batch.length * 2, batchSize + bytes)];
+            System.arraycopy(batch, 0, larger, 0, batchSize);
+            batch = larger;
+        }
+        return batchSize;
+    }
+
+    /**
+     * Add a record written at [start, end) to the open batch, holding the lock.
+     * @return ticket of the record.
+     */
+    private long commit(int start, int end){
+        if(start == FRAME_HEADER_BYTES){
+            pending.signal();
+        }
+        batchSize = end;
+        records++;
+        return openBatch;
+    }
+
+    /**
+     * Wait until a record is on disk.
+     * @param ticket ticket returned when the record was appended.
+     * @throws IOException when writing the log failed.
+     * @throws InterruptedIOException when interrupted while waiting.
+     */
+    public void awaitDurable(long ticket) throws IOException{
+        lock.lock();
+        try{
+            while(durableBatch < ticket && failure == null){
+                if(closed && flusher.getState() == Thread.State.TERMINATED){
+                    break;
+                }
+                durable.await();
+            }
+            if(durableBatch < ticket){
+                throw new IOException("Move log failed", failure);
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the move log");
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of batches written, each with one {@code fsync}.
+     * @return batch count.
+     */
+    public long getBatches(){
+        lock.lock();
+        try{
+            return batches;
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of records appended.
+     * @return record count.
+     */
+    public long getRecords(){
+        lock.lock();
+        try{
+            return records;
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write batches until the log is closed: take the open batch, write it and sync it without the
+     * lock while appends fill the next one, then wake the threads waiting for it.
+     */
+    private void flush(){
+        lock.lock();
+        try{
+            while(true){
+                while(batchSize == FRAME_HEADER_BYTES && !closed){
+                    pending.awaitUninterruptibly();
+                }
+                if(batchSize == FRAME_HEADER_BYTES){
+                    return;
+                }
+                byte[] out = batch;
+                int size = batchSize;
+                int split = batchSplit;
+                long number = openBatch++;
+                batch = spare;
+                batchSize = FRAME_HEADER_BYTES;
+                batchSplit = -1;
+                lock.unlock();
+                try{
+                    write(out, size, split);
+                }catch(IOException e){
+                    failure = e;
+                }finally{
+                    lock.lock();
+                }
+                spare = out;
+                if(failure != null){
+                    durable.signalAll();
+                    return;
+                }
+                durableBatch = number;
+                batches++;
+                durable.signalAll();
+            }
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frame the records of a batch, append them to the file and sync it, starting a new segment
+     * at the split if there is one.
+     */
+    private void write(byte[] out, int size, int split) throws IOException{
+        if(split > 0){
+            writeFrame(out, 0, split);
+        }
+        if(split >= 0){
+            channel.force(false);
+            FileChannel next = FileChannel.open(segment(file, segment + 1), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            try{
+                writeHeader(next);
+                syncDirectory();
+            }catch(IOException e){
+                next.close();
+                throw e;
+            }
+            channel.close();
+            channel = next;
+            segment++;
+        }
+        writeFrame(out, Math.max(split, 0), size);
+        channel.force(false);
+    }
+
+    /**
+     * Append the records at [from + frame header, to) as one frame, its header written at from.
+     */
+    private void writeFrame(byte[] out, int from, int to) throws IOException{
+        CRC32C crc = new CRC32C();
+        crc.update(out, from + FRAME_HEADER_BYTES, to - from - FRAME_HEADER_BYTES);
+        ByteBuffer frame = ByteBuffer.wrap(out, from, to - from);
+        frame.putInt(from, to - from - FRAME_HEADER_BYTES).putInt(from + 4, (int) crc.getValue());
+        while(frame.hasRemaining()){
+            channel.write(frame);
+        }
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException{
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+        while(header.hasRemaining()){
+            channel.write(header);
+        }
+        channel.force(true);
+    }
+
+    /**
+     * Make a new segment's directory entry durable.
+     */
+    private void syncDirectory(){
+        Path directory = file.toAbsolutePath().getParent();
+        try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)){
+            channel.force(true);
+        }catch(IOException e){
+            // not supported everywhere; the next snapshot keeps the older segments until then
+        }
+    }
+
+    /**
+     * Path of a segment.
+     */
+    private static Path segment(Path file, long number){
+        return number == 0 ? file : file.resolveSibling(file.getFileName() + "." + number);
+    }
+
+    /**
+     * Numbers of the segments of a log on disk, in increasing order.
+     */
+    private static long[] segments(Path file) throws IOException{
+        String name = file.getFileName().toString();
+        Path directory = file.toAbsolutePath().getParent();
+        List<Long> numbers = new ArrayList<>();
+        try(DirectoryStream<Path> entries = Files.newDirectoryStream(directory, entry -> entry.getFileName().toString().startsWith(name))){
+            for(Path entry : entries){
+                String suffix = entry.getFileName().toString().substring(name.length());
+                if(suffix.isEmpty()){
+                    numbers.add(0L);
+                }else if(suffix.matches("\\.[1-9][0-9]{0,17}")){
+                    numbers.add(Long.parseLong(suffix.substring(1)));
+                }
+            }
+        }
+        return numbers.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    /**
+     * Read the whole batches of a segment; one left empty by a crash has none.
+     */
+    private static void readSegment(Path path, Visitor visitor) throws IOException{
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            if(channel.size() >= HEADER_BYTES){
+                read(Channels.newInputStream(channel), channel.size(), visitor);
+            }
+        }
+    }
+
+    /**
+     * Write the records still open and close the file.
+     * @throws IOException when writing the last batch failed.
+     */
+    @Override
+    public void close() throws IOException{
+        lock.lock();
+        try{
+            if(closed){
+                return;
+            }
+            closed = true;
+            pending.signal();
+        }finally{
+            lock.unlock();
+        }
+        try{
+            flusher.join();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if(failure != null){
+            throw new IOException("Move log failed", failure);
+        }
+    }
+
+    /**
+     * Read the batches of a log until its end or a batch cut short.
+     * @param size length of the segment; a batch claiming to be longer is cut short.
+     * @param visitor receiver of the records, or null to only check the batches.
+     * @return length of the whole batches, with the file header.
+     */
+    private static long read(InputStream stream, long size, Visitor visitor) throws IOException{
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        try{
+            if(in.readInt() != MAGIC){
+                throw new IOException("Not a move log");
+            }
+            int version = in.readInt();
+            if(version < 1 || version > VERSION){
+                throw new IOException("Unsupported move log version");
+            }
+        }catch(EOFException e){
+            throw new IOException("Not a move log");
+        }
+        long end = HEADER_BYTES;
+        byte[] payload = new byte[4096];
+        CRC32C crc = new CRC32C();
+        while(true){
+            int length;
+            int checksum;
+            try{
+                length = in.readInt();
+                checksum = in.readInt();
+                // a torn length may be anything: never trust it beyond the bytes left
+                if(length < 0 || length > size - end - FRAME_HEADER_BYTES){
+                    return end;
+                }
+                if(length > payload.length){
+                    payload = new byte[length];
+                }
+                in.readFully(payload, 0, length);
+            }catch(EOFException e){
+                return end;
+            }
+            crc.reset();
+            crc.update(payload, 0, length);
+            if((int) crc.getValue() != checksum){
+                return end;
+            }
+            if(visitor != null){
+                decode(payload, length, visitor);
+            }
+            end += FRAME_HEADER_BYTES + length;
+        }
+    }
+
+    /**
+     * Pass the records of a batch to a visitor.
+     */
+    private static void decode(byte[] payload, int length, Visitor visitor) throws IOException{
+        ByteBuffer in = ByteBuffer.wrap(payload, 0, length);
+        while(in.hasRemaining()){
+            long game = getVarint(in);
+            int tag = in.get() & 0xFF;
+            if(tag < Position.MAX_SIZE){
+                visitor.moved(game, tag + 1);
+            }else if(tag == UNDO){
+                visitor.undone(game);
+            }else if(tag == END){
+                visitor.ended(game);
+            }else if(tag == CREATE || tag == SNAPSHOT){
+                int rows = in.get();
+                int columns = in.get();
+                int connect = in.get();
+                String playerName1 = getString(in);
+                String playerName2 = getString(in);
+                if(tag == CREATE){
+                    visitor.created(game, playerName1, playerName2, rows, columns, connect);
+                }else{
+                    int[] moves = new int[(int) getVarint(in)];
+                    for(int i = 0; i < moves.length; i += 2){
+                        int b = in.get();
+                        moves[i] = (b & 15) + 1;
+                        if(i + 1 < moves.length){
+                            moves[i + 1] = (b >>> 4 & 15) + 1;
+                        }
+                    }
+                    visitor.restored(game, playerName1, playerName2, rows, columns, connect, moves);
+                }
+            }else if(tag == SNAPSHOT_START){
+                visitor.snapshotStarted(game, getVarint(in));
+            }else if(tag == SNAPSHOT_END){
+                visitor.snapshotEnded(game);
+            }else{
+                throw new IOException("Unknown move log record " + tag);
+            }
+        }
+    }
+
+    /**
+     * Read a number written by {@link #putVarint(byte[], int, long)}.
+     */
+    private static long getVarint(ByteBuffer in){
+        long value = 0;
+        for(int shift = 0; ; shift += 7){
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0){
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Read a varint length and as many UTF-8 bytes.
+     */
+    private static String getString(ByteBuffer in){
+        int size = (int) getVarint(in);
+        String value = new String(in.array(), in.position(), size, StandardCharsets.UTF_8);
+        in.position(in.position() + size);
+        return value;
+    }
+
+    /**
+     * Write a non-negative number 7 bits per byte, low bits first, the top bit set on all bytes but the last.
+     * @return offset after the number.
+     */
+    private static int putVarint(byte[] out, int at, long value){
+        while((value & ~0x7FL) != 0){
+            out[at++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        out[at++] = (byte) value;
+        return at;
+    }
+
+    /**
+     * Write the board size and player names of a game.
+     * @return offset after them.
+     */
+    private static int putGame(byte[] out, int at, int rows, int columns, int connect, byte[] name1, byte[] name2){
+        out[at++] = (byte) rows;
+        out[at++] = (byte) columns;
+        out[at++] = (byte) connect;
+        at = putBytes(out, at, name1);
+        return putBytes(out, at, name2);
+    }
+
+    /**
+     * Write a varint length and the bytes.
+     * @return offset after the bytes.
+     */
+    private static int putBytes(byte[] out, int at, byte[] bytes){
+        at = putVarint(out, at, bytes.length);
+        System.arraycopy(bytes, 0, out, at, bytes.length);
+        return at + bytes.length;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Representation of a position on a board too big for a single 64-bit bitboard.
+ * Cells keep the numbering of {@link BitboardPosition}, {@code col * (rows + 1) + row}, spread over
+ * as many longs as needed: one array marks the occupied cells and one the checkers of the first
+ * player. The height of every column is kept on the side, so a move touches one word of each array.
+ * Lines are followed cell by cell from the cell of the move, so checking a move still only looks
+ * at the four lines through it.
+ */
+public final class MultiWordPosition extends Position {
+    /**
+     * Steps (column, row) of the four directions of a line: vertical, horizontal and both diagonals.
+     */
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    /**
+     * Every occupied cell.
+     */
+    private final long[] mask;
+    /**
+     * Checkers of the first player.
+     */
+    private final long[] first;
+    /**
+     * Number of checkers of every column.
+     */
+    private final int[] heights;
+
+    MultiWordPosition(int height, int width, int connect){
+        super(height, width, connect);
+        int words = (width * (height + 1) + Long.SIZE - 1) / Long.SIZE;
+        this.mask = new long[words];
+        this.first = new long[words];
+        this.heights = new int[width];
+    }
+
+    @Override
+    public MultiWordPosition copy(){
+        MultiWordPosition copy = new MultiWordPosition(height, width, connect);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    @Override
+    public void copyFrom(Position other){
+        MultiWordPosition position = (MultiWordPosition) other;
+        System.arraycopy(position.mask, 0, mask, 0, mask.length);
+        System.arraycopy(position.first, 0, first, 0, first.length);
+        System.arraycopy(position.heights, 0, heights, 0, heights.length);
+        this.moves = position.moves;
+        this.zobrist = position.zobrist;
+        this.mirrorZobrist = position.mirrorZobrist;
+    }
+
+    @Override
+    public boolean canPlay(int col){
+        return heights[col] < height;
+    }
+
+    @Override
+    public void play(int col){
+        int cell = col * (height + 1) + heights[col]++;
+        mask[cell >>> 6] |= 1L << cell;
+        if((moves & 1) == 0){
+            first[cell >>> 6] |= 1L << cell;
+        }
+        toggleZobrist(moves & 1, cell);
+        moves++;
+    }
+
+    @Override
+    public void undo(int col){
+        int cell = col * (height + 1) + --heights[col];
+        mask[cell >>> 6] &= ~(1L << cell);
+        first[cell >>> 6] &= ~(1L << cell);
+        moves--;
+        toggleZobrist(moves & 1, cell);
+    }
+
+    @Override
+    public boolean isWinningMove(int col){
+        int row = heights[col];
+        int player = (moves & 1) + 1;
+        for(int[] direction : DIRECTIONS){
+            int count = 1 + run(col, row, direction[0], direction[1], player)
+                    + run(col, row, -direction[0], -direction[1], player);
+            if(count >= connect){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Count the consecutive checkers of a player next to a cell along one direction, the cell excluded.
+     */
+    private int run(int col, int row, int colStep, int rowStep, int player){
+        int count = 0;
+        for(int c = col + colStep, r = row + rowStep;
+            c >= 0 && c < width && r >= 0 && r < height && cellAt(r, c) == player;
+            c += colStep, r += rowStep){
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int height(int col){
+        return heights[col];
+    }
+
+    @Override
+    public int cellAt(int row, int col){
+        int cell = col * (height + 1) + row;
+        long bit = 1L << cell;
+        if((mask[cell >>> 6] & bit) == 0){
+            return 0;
+        }
+        return (first[cell >>> 6] & bit) != 0 ? 1 : 2;
+    }
+
+    /**
+     * Get a key identifying the position: a board this big does not fit in a long, so it is the
+     * Zobrist hash.
+     * @return {@link #zobrist()}.
+     */
+    @Override
+    public long key(){
+        return zobrist;
+    }
+
+    /**
+     * Get the key of the position mirrored left to right.
+     * @return Zobrist hash of the mirrored position.
+     */
+    @Override
+    public long mirrorKey(){
+        return mirrorZobrist;
+    }
+}
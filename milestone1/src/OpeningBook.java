@@ -0,0 +1,351 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Read-only book of solved opening positions, memory-mapped from a binary file.
+ * Opening a book only maps the file, so it is instant whatever the size of the book; pages are
+ * read from disk the first time a lookup touches them. Records are sorted by a hash of the
+ * position key and a directory indexed by the top bits of that hash points at the few records
+ * sharing them, so a lookup reads one directory slot and scans about two records. A position and
+ * its left-right mirror share one record, stored under the canonical key of the pair. Books cover
+ * the standard 6 x 7 game only; positions of other boards are never found.
+ * <p>
+ * File layout, all numbers big-endian:
+ * <pre>
+ *         int     magic "C4BK"
+ *         int     format version
+ *         byte    board width
+ *         byte    board height
+ *         byte    number of plies covered
+ *         byte    directory bits b
+ *         long    number of records n
+ *         long    2^b + 1 directory slots, the index of the first record of each hash prefix
+ *         n * 10  records: long canonical position key, byte score, byte best column (0-based)
+ *                 of the position with that key
+ * </pre>
+ * Example:
+ * <pre>
+ *         OpeningBook book = OpeningBook.open(Paths.get("opening.book"));
+ *         int column = book.bestColumn(game);   //-1 if the position is not in the book
+ * </pre>
+ * Running the class builds a book:
+ * <pre>
+ *         java OpeningBook opening.book [plies] [threads] [table size in MB]
+ * </pre>
+ */
+public class OpeningBook implements AutoCloseable {
+    /**
+     * Returned by {@link #bestColumn(Position)} when the position is not in the book.
+     */
+    public static final int NOT_FOUND = -1;
+
+    private static final int MAGIC = 0x4334424B;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 20;
+    private static final int RECORD_BYTES = 10;
+    /**
+     * Records per mapped region; a single mapping cannot exceed 2 GB.
+     */
+    private static final long RECORDS_PER_REGION = (1L << 30) / RECORD_BYTES;
+
+    private final FileChannel channel;
+    private final int plies;
+    private final int directoryBits;
+    private final long size;
+    private final MappedByteBuffer directory;
+    private final MappedByteBuffer[] regions;
+
+    private OpeningBook(FileChannel channel) throws IOException{
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while(header.hasRemaining()){
+            if(channel.read(header, header.position()) < 0){
+                break;
+            }
+        }
+        header.flip();
+        if(header.remaining() < HEADER_BYTES || header.getInt() != MAGIC){
+            throw new IOException("Not an opening book");
+        }
+        if(header.getInt() != VERSION){
+            throw new IOException("Unsupported opening book version");
+        }
+        if(header.get() != Position.WIDTH || header.get() != Position.HEIGHT){
+            throw new IOException("Opening book built for another board size");
+        }
+        plies = header.get();
+        directoryBits = header.get();
+        size = header.getLong();
+
+        long directoryBytes = ((1L << directoryBits) + 1) * 8;
+        directory = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, directoryBytes);
+        long recordsStart = HEADER_BYTES + directoryBytes;
+        if(channel.size() != recordsStart + size * RECORD_BYTES){
+            throw new IOException("Truncated opening book");
+        }
+        regions = new MappedByteBuffer[(int) ((size + RECORDS_PER_REGION - 1) / RECORDS_PER_REGION)];
+        for(int i = 0; i < regions.length; i++){
+            long first = i * RECORDS_PER_REGION;
+            long count = Math.min(RECORDS_PER_REGION, size - first);
+            regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, recordsStart + first * RECORD_BYTES, count * RECORD_BYTES);
+        }
+    }
+
+    /**
+     * Open a book file.
+     * @param file path of the book.
+     * @return the book, ready for lookups.
+     * @throws IOException when the file cannot be read or is not a book for this board.
+     */
+    public static OpeningBook open(Path file) throws IOException{
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try{
+            return new OpeningBook(channel);
+        }catch(IOException | RuntimeException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the number of plies covered: every position with fewer checkers reachable without a win is in the book.
+     * @return number of plies.
+     */
+    public int getPlies(){
+        return plies;
+    }
+
+    /**
+     * Get the number of positions in the book.
+     * @return number of records.
+     */
+    public long size(){
+        return size;
+    }
+
+    /**
+     * Get the best column of the current position of a game.
+     * @param game game to look up.
+     * @return best column, counted from 1 like in {@link ConnectFour#makeMove(int)}, or {@link #NOT_FOUND}.
+     */
+    public int bestColumn(ConnectFour game){
+        int col = bestColumn(game.getPosition());
+        return col == NOT_FOUND ? NOT_FOUND : col + 1;
+    }
+
+    /**
+     * Get the best column of a position.
+     * @param position position to look up.
+     * @return best column index, [0, WIDTH), or {@link #NOT_FOUND}.
+     */
+    public int bestColumn(Position position){
+        if(!position.isStandard()){
+            return NOT_FOUND;
+        }
+        long key = position.key();
+        long mirrorKey = position.mirrorKey();
+        long record = find(Math.min(key, mirrorKey));
+        if(record < 0){
+            return NOT_FOUND;
+        }
+        int col = region(record).get(offset(record) + 9);
+        return key <= mirrorKey ? col : Position.WIDTH - 1 - col;
+    }
+
+    /**
+     * Get the exact score of a position, see {@link Solver} for its meaning.
+     * @param position position to look up.
+     * @return score of the position.
+     * @throws IllegalArgumentException when the position is not in the book.
+     */
+    public int score(Position position){
+        long record = position.isStandard() ? find(position.canonicalKey()) : -1;
+        if(record < 0){
+            throw new IllegalArgumentException("Position is not in the book");
+        }
+        return region(record).get(offset(record) + 8);
+    }
+
+    /**
+     * Close the file. The mappings are released once the book is garbage collected.
+     * @throws IOException when closing the file fails.
+     */
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+
+    /**
+     * Find the index of the record of a key, or -1.
+     */
+    private long find(long key){
+        int bucket = (int) (hash(key) >>> (64 - directoryBits));
+        long end = directory.getLong((bucket + 1) * 8);
+        for(long record = directory.getLong(bucket * 8); record < end; record++){
+            if(region(record).getLong(offset(record)) == key){
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    private MappedByteBuffer region(long record){
+        return regions[(int) (record / RECORDS_PER_REGION)];
+    }
+
+    private static int offset(long record){
+        return (int) (record % RECORDS_PER_REGION) * RECORD_BYTES;
+    }
+
+    private static final long MULTIPLIER_1 = 0x9E3779B97F4A7C15L;
+    private static final long MULTIPLIER_2 = 0xBF58476D1CE4E5B9L;
+
+    /**
+     * Spread keys uniformly, so that directory buckets stay small. Every step can be undone,
+     * see {@link #unhash(long)}.
+     */
+    static long hash(long key){
+        long hash = key * MULTIPLIER_1;
+        hash ^= hash >>> 31;
+        hash *= MULTIPLIER_2;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * Get back the key of a hash, so that the builder only needs to sort hashes.
+     */
+    static long unhash(long hash){
+        hash ^= (hash >>> 29) ^ (hash >>> 58);
+        hash *= inverse(MULTIPLIER_2);
+        hash ^= (hash >>> 31) ^ (hash >>> 62);
+        return hash * inverse(MULTIPLIER_1);
+    }
+
+    /**
+     * Multiplicative inverse of an odd number modulo 2^64, by Newton's iteration.
+     */
+    private static long inverse(long odd){
+        long inverse = odd;
+        for(int i = 0; i < 5; i++){
+            inverse *= 2 - odd * inverse;
+        }
+        return inverse;
+    }
+
+    /**
+     * Solve every position reachable without a win in fewer than plies checkers and write them to a book file.
+     * @param file path of the book to write.
+     * @param plies number of plies to cover.
+     * @param solver search giving the score and best column of a position, normally an exact solver.
+     * @throws IOException when the file cannot be written.
+     */
+    public static void build(Path file, int plies, Function<Position, Solver.Result> solver) throws IOException{
+        long[] hashes = collect(plies);
+        int count = hashes.length;
+        int directoryBits = Math.max(1, Math.min(27, 64 - Long.numberOfLeadingZeros(count / 2)));
+
+        // sort by hash in place; flipping the sign bit makes the signed sort an unsigned one
+        for(int i = 0; i < count; i++){
+            hashes[i] = hash(hashes[i]) ^ Long.MIN_VALUE;
+        }
+        Arrays.sort(hashes);
+
+        try(OutputStream stream = Files.newOutputStream(file);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(Position.WIDTH);
+            out.writeByte(Position.HEIGHT);
+            out.writeByte(plies);
+            out.writeByte(directoryBits);
+            out.writeLong(count);
+            int record = 0;
+            for(long bucket = 0; bucket <= 1L << directoryBits; bucket++){
+                while(record < count && (hashes[record] ^ Long.MIN_VALUE) >>> (64 - directoryBits) < bucket){
+                    record++;
+                }
+                out.writeLong(record);
+            }
+            for(long hash : hashes){
+                long key = unhash(hash ^ Long.MIN_VALUE);
+                Solver.Result result = solver.apply(fromKey(key));
+                out.writeLong(key);
+                out.writeByte(result.getScore());
+                out.writeByte(result.getColumn() - 1);
+            }
+        }
+    }
+
+    /**
+     * Collect the distinct canonical keys of every position reachable without a win in fewer than plies checkers.
+     */
+    private static long[] collect(int plies){
+        long[] level = {Position.create().key()};
+        long[] all = level;
+        for(int ply = 1; ply < plies; ply++){
+            long[] next = new long[level.length * Position.WIDTH];
+            int count = 0;
+            for(long key : level){
+                Position position = fromKey(key);
+                for(int col = 0; col < Position.WIDTH; col++){
+                    if(position.canPlay(col) && !position.isWinningMove(col)){
+                        Position child = position.copy();
+                        child.play(col);
+                        next[count++] = child.canonicalKey();
+                    }
+                }
+            }
+            level = distinct(next, count);
+            long[] merged = Arrays.copyOf(all, all.length + level.length);
+            System.arraycopy(level, 0, merged, all.length, level.length);
+            all = merged;
+        }
+        return all;
+    }
+
+    private static Position fromKey(long key){
+        return BitboardPosition.fromKey(Position.HEIGHT, Position.WIDTH, Position.CONNECT, key);
+    }
+
+    private static long[] distinct(long[] keys, int count){
+        Arrays.sort(keys, 0, count);
+        int unique = 0;
+        for(int i = 0; i < count; i++){
+            if(unique == 0 || keys[unique - 1] != keys[i]){
+                keys[unique++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(keys, unique);
+    }
+
+    /**
+     * Build a book file.
+     * @param args path of the book, number of plies, number of threads and table size in MB.
+     * @throws IOException when the file cannot be written.
+     */
+    public static void main(String[] args) throws IOException{
+        if(args.length < 1){
+            System.out.println("Usage: java OpeningBook <file> [plies] [threads] [table size in MB]");
+            return;
+        }
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int megabytes = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+        long start = System.nanoTime();
+        try(ParallelSolver solver = new ParallelSolver(threads, TranspositionTable.ofMegabytes(megabytes))){
+            build(Paths.get(args[0]), plies, solver::solve);
+        }
+        System.out.printf("Built %s in %.1f s%n", args[0], (System.nanoTime() - start) / 1e9);
+    }
+}
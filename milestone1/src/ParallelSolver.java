@@ -0,0 +1,221 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connect 4 solver spreading the search over a {@link ForkJoinPool}, so that a single hard
+ * position can use every core. The top of the tree is split young-brothers-wait style: at each
+ * split node the first child, in center-first order, is searched alone to get a good bound, then
+ * its younger brothers are searched in parallel with that bound. Below {@link #DEFAULT_SPLIT_PLIES}
+ * plies every thread runs a plain {@link Solver}, and all threads share one {@link TranspositionTable}.
+ * Example:
+ * <pre>
+ *         try (ParallelSolver solver = new ParallelSolver(8, TranspositionTable.ofMegabytes(1024))) {
+ *             Solver.Result result = solver.solve(game);
+ *         }
+ * </pre>
+ * Running the class compares the solve time of a position for 1, 2, 4, ... threads:
+ * <pre>
+ *         java ParallelSolver [moves played, e.g. 44444433] [table size in MB]
+ * </pre>
+ */
+public class ParallelSolver implements AutoCloseable {
+    /**
+     * Number of plies below the root where the tree is split between threads.
+     */
+    public static final int DEFAULT_SPLIT_PLIES = 4;
+
+    private final ForkJoinPool pool;
+    private final int splitPlies;
+    private final ThreadLocal<Solver> solvers;
+    private final LongAdder nodes = new LongAdder();
+    /**
+     * Receiver of the counts of the searches of every thread, or null.
+     */
+    private volatile EngineMetrics metrics;
+
+    /**
+     * Create a solver running on its own pool.
+     * @param threads number of threads, at least 1.
+     * @param table transposition table shared by all threads.
+     */
+    public ParallelSolver(int threads, TranspositionTable table){
+        this(threads, table, DEFAULT_SPLIT_PLIES);
+    }
+
+    /**
+     * Create a solver running on its own pool.
+     * @param threads number of threads, at least 1.
+     * @param table transposition table shared by all threads.
+     * @param splitPlies number of plies below the root where the tree is split, at least 1.
+     * @throws IllegalArgumentException when threads or splitPlies is smaller than 1.
+     */
+    public ParallelSolver(int threads, TranspositionTable table, int splitPlies){
+        if(threads < 1 || splitPlies < 1){
+            throw new IllegalArgumentException("Threads and split plies must be at least 1");
+        }
+        this.pool = new ForkJoinPool(threads);
+        this.splitPlies = splitPlies;
+        this.solvers = ThreadLocal.withInitial(() -> new Solver(Solver.FULL_DEPTH, table));
+    }
+
+    /**
+     * Solve the current position of a game.
+     * @param game game to analyse, it is not modified.
+     * @return exact score and best column for the current player.
+     * @throws IllegalStateException when the game is already over.
+     */
+    public Solver.Result solve(ConnectFour game){
+        if(game.getStatus() != ConnectFour.Status.PLAYING){
+            throw new IllegalStateException("The game is over");
+        }
+        return solve(game.getPosition());
+    }
+
+    /**
+     * Solve a position where neither player has won yet.
+     * @param position position to analyse, it is not modified.
+     * @return exact score and best column for the player to move.
+     * @throws IllegalStateException when the board is full.
+     */
+    public Solver.Result solve(Position position){
+        if(position.moves() == position.cells()){
+            throw new IllegalStateException("The board is full");
+        }
+        nodes.reset();
+        SplitTask root = new SplitTask(position.copy(), Solver.minScore(position) - 1, Solver.maxScore(position) + 1, splitPlies);
+        int score = pool.invoke(root);
+        return new Solver.Result(score, root.bestColumn + 1, nodes.sum());
+    }
+
+    /**
+     * Set where the counts of the searches of every thread are added. Metrics are off by default.
+     * @param metrics metrics receiving the counts, null to turn them off.
+     */
+    public void setMetrics(EngineMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    /**
+     * Get the number of threads of the pool.
+     * @return number of threads.
+     */
+    public int getThreads(){
+        return pool.getParallelism();
+    }
+
+    /**
+     * Shut the pool down.
+     */
+    @Override
+    public void close(){
+        pool.shutdown();
+    }
+
+    /**
+     * Search of one node of the split part of the tree.
+     */
+    private final class SplitTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Position position;
+        private final int alpha;
+        private final int beta;
+        private final int splitPlies;
+        private int bestColumn = -1;
+
+        SplitTask(Position position, int alpha, int beta, int splitPlies){
+            this.position = position;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.splitPlies = splitPlies;
+        }
+
+        @Override
+        protected Integer compute(){
+            int[] order = Solver.columnOrder(position.width());
+            for(int col : order){
+                if(position.canPlay(col) && position.isWinningMove(col)){
+                    nodes.increment();
+                    bestColumn = col;
+                    return Solver.winScore(position);
+                }
+            }
+            if(splitPlies == 0 || position.moves() == position.cells() - 1){
+                Solver solver = solvers.get();
+                solver.setMetrics(metrics);
+                int score = solver.search(position, alpha, beta);
+                nodes.add(solver.nodes());
+                return score;
+            }
+            nodes.increment();
+
+            Position[] children = new Position[order.length];
+            int[] columns = new int[order.length];
+            int count = 0;
+            for(int col : order){
+                if(position.canPlay(col)){
+                    children[count] = position.copy();
+                    children[count].play(col);
+                    columns[count++] = col;
+                }
+            }
+
+            // the eldest brother is searched alone, its score narrows the window of the others
+            int best = -new SplitTask(children[0], -beta, -alpha, splitPlies - 1).compute();
+            int bestIndex = 0;
+            if(best < beta && count > 1){
+                int bound = Math.max(alpha, best);
+                SplitTask[] brothers = new SplitTask[count - 1];
+                for(int i = 1; i < count; i++){
+                    brothers[i - 1] = new SplitTask(children[i], -beta, -bound, splitPlies - 1);
+                }
+                invokeAll(brothers);
+                for(int i = 1; i < count; i++){
+                    int score = -brothers[i - 1].join();
+                    if(score > best){
+                        best = score;
+                        bestIndex = i;
+                    }
+                }
+            }
+            bestColumn = columns[bestIndex];
+            return best;
+        }
+    }
+
+    /**
+     * Solve a position with 1, 2, 4, ... threads up to the number of cores and print the speedup
+     * of each thread count over a single thread.
+     * @param args moves played from the empty board as a string of columns, and the table size in MB.
+     */
+    public static void main(String[] args){
+        String moves = args.length > 0 ? args[0] : "44444433";
+        int megabytes = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+        Position position = Position.create();
+        for(char c : moves.toCharArray()){
+            position.play(c - '1');
+        }
+        TranspositionTable table = TranspositionTable.ofMegabytes(megabytes);
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        double baseline = 0;
+        System.out.println("threads  score  column  nodes          time (ms)  speedup");
+        for(int threads = 1; ; threads = Math.min(threads * 2, cores)){
+            table.clear();
+            try(ParallelSolver solver = new ParallelSolver(threads, table)){
+                long start = System.nanoTime();
+                Solver.Result result = solver.solve(position);
+                double millis = (System.nanoTime() - start) / 1e6;
+                if(threads == 1){
+                    baseline = millis;
+                }
+                System.out.printf("%7d  %5d  %6d  %13d  %9.1f  %7.2f%n",
+                        threads, result.getScore(), result.getColumn(), result.getNodes(), millis, baseline / millis);
+            }
+            if(threads == cores){
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the move sequences of a given length from a position (perft). A move that wins the game
+ * or fills the board ends the sequence early and counts as a leaf. The counts are a correctness
+ * check of move generation, play, undo and win detection, and the run time is a measure of their
+ * raw speed, since nothing else happens. The walk plays and undoes moves on a single
+ * {@link Position} per thread, without allocating.
+ * Counting can run on one thread or split over a {@link ForkJoinPool}. Optionally, the number of
+ * distinct leaf positions is counted as well, exploring every transposition only once.
+ * Example, from the empty board:
+ * <pre>
+ *         Perft.count(Position.create(), 4);    //returns 2401
+ *         Perft.count(Position.create(), 7);    //returns 823536, the first wins appear at ply 7
+ * </pre>
+ * Running the class prints the counts and speed for every depth:
+ * <pre>
+ *         java Perft [depth] [threads] [distinct] [moves played, e.g. 44]
+ * </pre>
+ */
+public class Perft {
+    /**
+     * Number of plies below the root split between threads in parallel mode.
+     */
+    public static final int SPLIT_PLIES = 3;
+
+    private Perft(){
+    }
+
+    /**
+     * Count the move sequences of a given length on the calling thread.
+     * @param position start position where neither player has won, it is not modified.
+     * @param depth number of moves, at least 0.
+     * @return number of leaves.
+     */
+    public static long count(Position position, int depth){
+        return walk(position.copy(), depth);
+    }
+
+    /**
+     * Count the move sequences of a given length on a fork/join pool.
+     * @param position start position where neither player has won, it is not modified.
+     * @param depth number of moves, at least 0.
+     * @param pool pool running the count.
+     * @return number of leaves.
+     */
+    public static long count(Position position, int depth, ForkJoinPool pool){
+        return pool.invoke(new CountTask(position.copy(), depth, SPLIT_PLIES));
+    }
+
+    /**
+     * Count the distinct leaf positions reached by the move sequences of a given length. Every
+     * position is expanded once, however many sequences lead to it.
+     * @param position start position where neither player has won, it is not modified.
+     * @param depth number of moves, at least 0.
+     * @return number of distinct leaves.
+     */
+    public static long countDistinct(Position position, int depth){
+        KeySet leaves = new KeySet();
+        walkDistinct(position.copy(), depth, new KeySet(), leaves);
+        return leaves.size();
+    }
+
+    private static long walk(Position position, int depth){
+        if(depth == 0){
+            return 1;
+        }
+        long leaves = 0;
+        int width = position.width();
+        for(int col = 0; col < width; col++){
+            if(!position.canPlay(col)){
+                continue;
+            }
+            if(depth == 1 || isTerminal(position, col)){
+                leaves++;
+                continue;
+            }
+            position.play(col);
+            leaves += walk(position, depth - 1);
+            position.undo(col);
+        }
+        return leaves;
+    }
+
+    private static void walkDistinct(Position position, int depth, KeySet expanded, KeySet leaves){
+        if(depth == 0){
+            leaves.add(position.key());
+            return;
+        }
+        if(!expanded.add(position.key())){
+            return;
+        }
+        for(int col = 0; col < position.width(); col++){
+            if(!position.canPlay(col)){
+                continue;
+            }
+            boolean terminal = isTerminal(position, col);
+            position.play(col);
+            if(terminal){
+                leaves.add(position.key());
+            }else{
+                walkDistinct(position, depth - 1, expanded, leaves);
+            }
+            position.undo(col);
+        }
+    }
+
+    /**
+     * Check if playing a column ends the game.
+     */
+    private static boolean isTerminal(Position position, int col){
+        return position.moves() == position.cells() - 1 || position.isWinningMove(col);
+    }
+
+    /**
+     * Count of one subtree; the top plies fork one task per move.
+     */
+    private static final class CountTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Position position;
+        private final int depth;
+        private final int splitPlies;
+
+        CountTask(Position position, int depth, int splitPlies){
+            this.position = position;
+            this.depth = depth;
+            this.splitPlies = splitPlies;
+        }
+
+        @Override
+        protected Long compute(){
+            if(splitPlies == 0 || depth <= 1){
+                return walk(position, depth);
+            }
+            long leaves = 0;
+            CountTask[] children = new CountTask[position.width()];
+            int count = 0;
+            for(int col = 0; col < position.width(); col++){
+                if(!position.canPlay(col)){
+                    continue;
+                }
+                if(isTerminal(position, col)){
+                    leaves++;
+                    continue;
+                }
+                Position child = position.copy();
+                child.play(col);
+                children[count++] = new CountTask(child, depth - 1, splitPlies - 1);
+            }
+            invokeAll(Arrays.asList(children).subList(0, count));
+            for(int i = 0; i < count; i++){
+                leaves += children[i].join();
+            }
+            return leaves;
+        }
+    }
+
+    /**
+     * Open-addressing set of position keys, so that counting distinct positions does not box them.
+     */
+    private static final class KeySet {
+        /**
+         * Marks an empty slot; key 0 (the empty board) is tracked on the side.
+         */
+        private static final long EMPTY = 0;
+
+        private long[] slots = new long[1 << 16];
+        private int size;
+        private boolean hasZero;
+
+        boolean add(long key){
+            if(key == EMPTY){
+                boolean added = !hasZero;
+                hasZero = true;
+                return added;
+            }
+            if((size + 1) * 2 > slots.length){
+                grow();
+            }
+            int mask = slots.length - 1;
+            for(int i = index(key, mask); ; i = (i + 1) & mask){
+                if(slots[i] == key){
+                    return false;
+                }
+                if(slots[i] == EMPTY){
+                    slots[i] = key;
+                    size++;
+                    return true;
+                }
+            }
+        }
+
+        long size(){
+            return size + (hasZero ? 1 : 0);
+        }
+
+        private void grow(){
+            long[] old = slots;
+            slots = new long[old.length * 2];
+            int mask = slots.length - 1;
+            for(long key : old){
+                if(key != EMPTY){
+                    int i = index(key, mask);
+                    while(slots[i] != EMPTY){
+                        i = (i + 1) & mask;
+                    }
+                    slots[i] = key;
+                }
+            }
+        }
+
+        private static int index(long key, int mask){
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+
+    /**
+     * Print the counts for every depth up to the given one, with the time and leaves per second.
+     * @param args maximum depth, number of threads (1 runs on the calling thread), "distinct" to
+     * also count distinct leaves, and moves played from the empty board as a string of columns.
+     */
+    public static void main(String[] args){
+        int maxDepth = args.length > 0 ? Integer.parseInt(args[0]) : 9;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        boolean distinct = args.length > 2 && args[2].equals("distinct");
+        Position position = Position.create();
+        if(args.length > 3){
+            for(char c : args[3].toCharArray()){
+                position.play(c - '1');
+            }
+        }
+
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        System.out.println("depth  leaves          time (ms)  leaves/s" + (distinct ? "       distinct" : ""));
+        for(int depth = 1; depth <= maxDepth; depth++){
+            long start = System.nanoTime();
+            long leaves = pool == null ? count(position, depth) : count(position, depth, pool);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            String line = String.format("%5d  %14d  %9.1f  %13.0f", depth, leaves, seconds * 1e3, leaves / seconds);
+            if(distinct){
+                line += String.format("  %13d", countDistinct(position, depth));
+            }
+            System.out.println(line);
+        }
+        if(pool != null){
+            pool.shutdown();
+        }
+    }
+}
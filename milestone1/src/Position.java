@@ -0,0 +1,297 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A Connect 4 position on a board of any size, for lines of any length. The standard game is
+ * 6 x 7 with lines of four, see {@link #create()}.
+ * Two representations exist behind this class. Boards where every column plus one spare cell fits
+ * in 64 bits are stored as a pair of longs by {@link BitboardPosition}, and all checks are a few
+ * shifts and masks. Bigger boards are stored as arrays of longs by {@link MultiWordPosition}.
+ * {@link #create(int, int, int)} picks the representation, callers only see a Position.
+ * In both, the cell at (row, col), with row 0 at the bottom, is number {@code col * (rows + 1) + row},
+ * which is also its index in the Zobrist tables.
+ * Example:
+ * <pre>
+ *         Position position = Position.create();
+ *         position.play(3);                  //drops a checker into the middle column
+ *         System.out.println(position.height(3));   //prints 1
+ *         System.out.println(position.cellAt(0, 3)); //prints 1, the first player's checker
+ * </pre>
+ */
+public abstract class Position {
+    /**
+     * Number of columns of the standard board.
+     */
+    public static final int WIDTH = 7;
+    /**
+     * Number of rows of the standard board.
+     */
+    public static final int HEIGHT = 6;
+    /**
+     * Length of a winning line in the standard game.
+     */
+    public static final int CONNECT = 4;
+    /**
+     * Largest number of rows or columns, so that scores and depths fit in a byte of a {@link TranspositionTable} entry.
+     */
+    public static final int MAX_SIZE = 15;
+
+    private static final long ZOBRIST_SEED = 0x436F6E6E656374L;
+
+    /**
+     * Zobrist tables of every board size created so far, keyed by {@code rows << 8 | columns}.
+     */
+    private static final ConcurrentHashMap<Integer, long[][]> ZOBRIST_TABLES = new ConcurrentHashMap<>();
+
+    final int width;
+    final int height;
+    final int connect;
+
+    /**
+     * Random number of every (player, cell) pair, xor-ed into {@link #zobrist} when a checker is
+     * dropped or taken back. Rows 0 and 1 are for the first and second player, rows 2 and 3 hold
+     * the numbers of the mirrored cell, so that the hash of the mirrored position can be
+     * maintained alongside without building it.
+     */
+    private final long[][] zobristTable;
+
+    /**
+     * Number of checkers played so far.
+     */
+    int moves;
+    /**
+     * Zobrist hash of the checkers, maintained by {@link #play(int)} and {@link #undo(int)}.
+     */
+    long zobrist;
+    /**
+     * Zobrist hash of the position mirrored left to right.
+     */
+    long mirrorZobrist;
+
+    Position(int height, int width, int connect){
+        this.width = width;
+        this.height = height;
+        this.connect = connect;
+        this.zobristTable = ZOBRIST_TABLES.computeIfAbsent(height << 8 | width, size -> zobristTable(height, width));
+    }
+
+    /**
+     * Create an empty position of the standard 6 x 7 game with lines of four.
+     * @return the empty position.
+     */
+    public static Position create(){
+        return new BitboardPosition(HEIGHT, WIDTH, CONNECT);
+    }
+
+    /**
+     * Create an empty position of a board of any size.
+     * @param rows number of rows, [1, MAX_SIZE] inclusive.
+     * @param columns number of columns, [1, MAX_SIZE] inclusive.
+     * @param connect length of a winning line, at least 2 and at most the number of rows or columns.
+     * @return the empty position, on a single bitboard when the board fits in 64 bits.
+     * @throws IllegalArgumentException when a size is out of range or no line of that length fits.
+     */
+    public static Position create(int rows, int columns, int connect){
+        if(rows < 1 || rows > MAX_SIZE || columns < 1 || columns > MAX_SIZE){
+            throw new IllegalArgumentException("Rows and columns must be from 1 to " + MAX_SIZE);
+        }
+        if(connect < 2 || connect > Math.max(rows, columns)){
+            throw new IllegalArgumentException("Connect length must be from 2 to " + Math.max(rows, columns));
+        }
+        if((rows + 1) * columns <= Long.SIZE){
+            return new BitboardPosition(rows, columns, connect);
+        }
+        return new MultiWordPosition(rows, columns, connect);
+    }
+
+    /**
+     * Create a copy of this position, with the same representation.
+     * @return the copy.
+     */
+    public abstract Position copy();
+
+    /**
+     * Overwrite this position with the content of another one, without allocating.
+     * @param other position to copy, created with the same size.
+     */
+    public abstract void copyFrom(Position other);
+
+    /**
+     * Check if a checker can be dropped into a column.
+     * @param col column index, [0, width()) inclusive.
+     * @return true if the column is not full.
+     */
+    public abstract boolean canPlay(int col);
+
+    /**
+     * Drop a checker of the player to move into a column and switch players.
+     * The caller must make sure the column is playable.
+     * @param col column index, [0, width()) inclusive.
+     */
+    public abstract void play(int col);
+
+    /**
+     * Take back the last checker dropped into a column and switch players back.
+     * The caller must make sure that checker was the last move played.
+     * @param col column index, [0, width()) inclusive.
+     */
+    public abstract void undo(int col);
+
+    /**
+     * Check if the player to move would win by dropping a checker into a column, that is, whether
+     * the player has a line of connect() checkers after the move. The position is left unchanged.
+     * The caller must make sure the column is playable and that no line exists yet, as in any game
+     * that stops at the first win: for the standard line length, bitboards look for a line anywhere
+     * on the board, other representations only through the new checker.
+     * @param col column index, [0, width()) inclusive.
+     * @return true if the player to move has a line of connect() checkers after playing the column.
+     */
+    public abstract boolean isWinningMove(int col);
+
+    /**
+     * Get the number of checkers in a column.
+     * @param col column index, [0, width()) inclusive.
+     * @return height of the column.
+     */
+    public abstract int height(int col);
+
+    /**
+     * Get the owner of a cell.
+     * @param row row index counted from the bottom, [0, height()) inclusive.
+     * @param col column index, [0, width()) inclusive.
+     * @return 0 for an empty cell, 1 for a checker of the first player, 2 for the second player.
+     */
+    public abstract int cellAt(int row, int col);
+
+    /**
+     * Get a key identifying the position. On a bitboard each position gets a distinct key, see
+     * {@link BitboardPosition#key()}; on bigger boards it is the Zobrist hash.
+     * @return key of the position.
+     */
+    public abstract long key();
+
+    /**
+     * Get the key of the position mirrored left to right.
+     * @return key of the mirrored position, see {@link #key()}.
+     */
+    public abstract long mirrorKey();
+
+    /**
+     * Get a key shared by the position and its left-right mirror: the smaller of the two keys.
+     * The position is the canonical one of the pair when {@code canonicalKey() == key()}.
+     * @return key of the position up to symmetry.
+     */
+    public long canonicalKey(){
+        return Math.min(key(), mirrorKey());
+    }
+
+    /**
+     * Get the number of columns of the board.
+     * @return width of the board.
+     */
+    public int width(){
+        return width;
+    }
+
+    /**
+     * Get the number of rows of the board.
+     * @return height of the board.
+     */
+    public int height(){
+        return height;
+    }
+
+    /**
+     * Get the length of a winning line.
+     * @return number of checkers to connect.
+     */
+    public int connect(){
+        return connect;
+    }
+
+    /**
+     * Get the number of cells of the board, which is also the number of moves of a full game.
+     * @return rows times columns.
+     */
+    public int cells(){
+        return width * height;
+    }
+
+    /**
+     * Check if another position is played on a board of the same size with the same line length,
+     * so that it can be copied into this one.
+     * @param other position to compare with.
+     * @return true if both have the same rows, columns and line length.
+     */
+    public boolean sameSize(Position other){
+        return width == other.width && height == other.height && connect == other.connect;
+    }
+
+    /**
+     * Check if the position is played on the standard 6 x 7 board with lines of four.
+     * @return true for the standard game.
+     */
+    public boolean isStandard(){
+        return width == WIDTH && height == HEIGHT && connect == CONNECT;
+    }
+
+    /**
+     * Get the number of checkers played so far.
+     * @return number of moves.
+     */
+    public int moves(){
+        return moves;
+    }
+
+    /**
+     * Get the Zobrist hash of the position: the xor of one random number per checker, chosen by
+     * its cell and its player. It is updated with a single xor by every play and undo, and unlike
+     * a bitboard key it does not depend on the board fitting in 64 bits. Distinct positions can
+     * share a hash, with a probability of about 2^-64 per pair.
+     * @return 64-bit hash of the position.
+     */
+    public long zobrist(){
+        return zobrist;
+    }
+
+    /**
+     * Get a Zobrist hash shared by the position and its left-right mirror, which have the same score
+     * and mirrored best moves. It is the smaller of the two hashes, both maintained incrementally.
+     * @return 64-bit hash of the position up to symmetry.
+     */
+    public long canonicalZobrist(){
+        return Math.min(zobrist, mirrorZobrist);
+    }
+
+    /**
+     * Add or remove a checker from both Zobrist hashes.
+     * @param player 0 for the first player, 1 for the second.
+     * @param cell number of the cell, {@code col * (height + 1) + row}.
+     */
+    final void toggleZobrist(int player, int cell){
+        zobrist ^= zobristTable[player][cell];
+        mirrorZobrist ^= zobristTable[player + 2][cell];
+    }
+
+    /**
+     * Draw the Zobrist numbers of a board size. Every size gets its own reproducible sequence.
+     */
+    private static long[][] zobristTable(int height, int width){
+        int cells = width * (height + 1);
+        long[][] table = new long[4][cells];
+        SplittableRandom random = new SplittableRandom(ZOBRIST_SEED ^ (height << 8 | width));
+        for(int player = 0; player < 2; player++){
+            for(int cell = 0; cell < cells; cell++){
+                table[player][cell] = random.nextLong();
+            }
+        }
+        for(int player = 0; player < 2; player++){
+            for(int cell = 0; cell < cells; cell++){
+                int col = cell / (height + 1);
+                int row = cell % (height + 1);
+                table[player + 2][cell] = table[player][(width - 1 - col) * (height + 1) + row];
+            }
+        }
+        return table;
+    }
+}
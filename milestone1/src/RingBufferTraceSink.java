@@ -0,0 +1,101 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Trace sink that keeps the most recent events in a fixed-size ring buffer.
+ * Any number of threads can record at the same time without taking a lock: each writer claims a
+ * slot with one atomic increment and publishes it with a sequence number. When the buffer is full
+ * the oldest events are overwritten. Readers skip slots that are being written while they look.
+ */
+public class RingBufferTraceSink implements TraceSink {
+    private final int capacityMask;
+    private final AtomicLong cursor = new AtomicLong();
+    /**
+     * Sequence number + 1 of the event stored in each slot, 0 while a slot is empty or being written.
+     */
+    private final AtomicLongArray sequences;
+    private final int[] events;
+    private final long[] times;
+    private final long[] firstArgs;
+    private final long[] secondArgs;
+
+    /**
+     * Create a ring buffer.
+     * @param capacity number of events kept, rounded up to a power of two.
+     * @throws IllegalArgumentException when capacity is not positive or too large.
+     */
+    public RingBufferTraceSink(int capacity){
+        if(capacity <= 0 || capacity > (1 << 30)){
+            throw new IllegalArgumentException("Capacity must be in [1, 2^30]");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        if(capacity == 1){
+            size = 1;
+        }
+        capacityMask = size - 1;
+        sequences = new AtomicLongArray(size);
+        events = new int[size];
+        times = new long[size];
+        firstArgs = new long[size];
+        secondArgs = new long[size];
+    }
+
+    @Override
+    public void record(int event, long time, long a, long b){
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) (sequence & capacityMask);
+        sequences.set(slot, 0);
+        VarHandle.storeStoreFence();
+        events[slot] = event;
+        times[slot] = time;
+        firstArgs[slot] = a;
+        secondArgs[slot] = b;
+        sequences.lazySet(slot, sequence + 1);
+    }
+
+    /**
+     * Get the total number of events recorded, including the ones already overwritten.
+     * @return number of recorded events.
+     */
+    public long recorded(){
+        return cursor.get();
+    }
+
+    /**
+     * Get the number of events the buffer can keep.
+     * @return capacity of the buffer.
+     */
+    public int capacity(){
+        return capacityMask + 1;
+    }
+
+    /**
+     * Replay the events still in the buffer, oldest first, into another sink.
+     * Events that are overwritten while being copied are skipped.
+     * @param target sink receiving the events.
+     * @return number of events copied.
+     */
+    public int copyTo(TraceSink target){
+        long end = cursor.get();
+        long start = Math.max(0, end - capacity());
+        int copied = 0;
+        for(long sequence = start; sequence < end; sequence++){
+            int slot = (int) (sequence & capacityMask);
+            if(sequences.get(slot) != sequence + 1){
+                continue;
+            }
+            int event = events[slot];
+            long time = times[slot];
+            long a = firstArgs[slot];
+            long b = secondArgs[slot];
+            VarHandle.acquireFence();
+            if(sequences.get(slot) != sequence + 1){
+                continue;
+            }
+            target.record(event, time, a, b);
+            copied++;
+        }
+        return copied;
+    }
+}
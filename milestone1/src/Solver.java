@@ -0,0 +1,449 @@
+/**
+ * Connect 4 solver using negamax with alpha-beta pruning. Columns are explored from the center
+ * outwards, since central checkers take part in more lines and usually produce the earliest cutoffs.
+ * Scores follow the usual convention: a positive score means the player to move wins, the sooner
+ * the larger (the score is the number of checkers the winner still has left after the winning move
+ * plus one), a negative score means the player to move loses, and 0 means a draw.
+ * Scores of positions already searched are kept in a {@link TranspositionTable}.
+ * A Solver is not thread-safe; use one instance per thread.
+ * Example:
+ * <pre>
+ *         ConnectFour game = new ConnectFour("Lisa", "AI");
+ *         game.makeMove(4);
+ *         Solver.Result result = new Solver().solve(game);
+ *         game.makeMove(result.getColumn());
+ * </pre>
+ */
+public class Solver {
+    /**
+     * Lowest possible score of the standard game: losing to the opponent's fourth checker.
+     */
+    public static final int MIN_SCORE = -(Position.WIDTH * Position.HEIGHT) / 2 + 3;
+    /**
+     * Highest possible score of the standard game: winning with the first player's fourth checker.
+     */
+    public static final int MAX_SCORE = (Position.WIDTH * Position.HEIGHT + 1) / 2 - 3;
+
+    /**
+     * Outcome of a search: the score of the position and the column to play.
+     */
+    public static class Result {
+        private final int score;
+        private final int column;
+        private final long nodes;
+
+        Result(int score, int column, long nodes){
+            this.score = score;
+            this.column = column;
+            this.nodes = nodes;
+        }
+
+        /**
+         * Get the score of the position for the player to move.
+         * @return score, see {@link Solver} for its meaning.
+         */
+        public int getScore(){
+            return score;
+        }
+
+        /**
+         * Get the best column to play.
+         * @return column, counted from 1 like in {@link ConnectFour#makeMove(int)}.
+         */
+        public int getColumn(){
+            return column;
+        }
+
+        /**
+         * Get the number of positions visited by the search.
+         * @return node count.
+         */
+        public long getNodes(){
+            return nodes;
+        }
+    }
+
+    /**
+     * Columns in the order they are explored for every board width, center first.
+     */
+    private static final int[][] COLUMN_ORDERS = new int[Position.MAX_SIZE + 1][];
+
+    static {
+        for(int width = 1; width <= Position.MAX_SIZE; width++){
+            COLUMN_ORDERS[width] = new int[width];
+            for(int i = 0; i < width; i++){
+                COLUMN_ORDERS[width][i] = width / 2 + (1 - 2 * (i % 2)) * (i + 1) / 2;
+            }
+        }
+    }
+
+    /**
+     * Search depth reaching the end of the game on every board size.
+     */
+    static final int FULL_DEPTH = Position.MAX_SIZE * Position.MAX_SIZE;
+
+    /**
+     * Entries of the table created by the constructors that do not take one, 16 MB.
+     */
+    private static final long DEFAULT_TABLE_ENTRIES = 1 << 20;
+
+    private final int maxDepth;
+    private final TranspositionTable table;
+    /**
+     * One preallocated position per ply, so that exploring a child never allocates. Allocated again
+     * only when a search starts on a board of another size.
+     */
+    private Position[] stack;
+    private long nodes;
+    private long cutoffs;
+    private long tableHits;
+    private long tableMisses;
+    /**
+     * Receiver of the counts of every search, or null.
+     */
+    private EngineMetrics metrics;
+    /**
+     * {@link System#nanoTime()} at which the current search started, read only when metrics are on.
+     */
+    private long started;
+    /**
+     * {@link System#nanoTime()} at which the current search gives up, or {@link #NO_DEADLINE}.
+     */
+    private long deadline = NO_DEADLINE;
+    /**
+     * Budget charged with the nodes of the current search, or null.
+     */
+    private Budget budget;
+
+    /**
+     * Deadline of searches that run to the end.
+     */
+    static final long NO_DEADLINE = Long.MIN_VALUE;
+    /**
+     * Number of nodes between two reads of the clock, minus one.
+     */
+    private static final int DEADLINE_CHECK_MASK = 1023;
+
+    /**
+     * Thrown when a search passes its deadline. A single instance without a stack trace is reused,
+     * so giving up costs nothing.
+     */
+    static final class TimeoutException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        static final TimeoutException INSTANCE = new TimeoutException();
+
+        private TimeoutException(){
+            super("Search deadline passed", null, false, false);
+        }
+    }
+
+    /**
+     * Create a solver that searches until the end of the game, so scores are exact.
+     */
+    public Solver(){
+        this(FULL_DEPTH);
+    }
+
+    /**
+     * Create a solver that looks at most maxDepth moves ahead. Positions at the horizon are scored
+     * as a draw, so scores are exact only when a result is found within the horizon.
+     * @param maxDepth number of moves to look ahead, at least 1.
+     * @throws IllegalArgumentException when maxDepth is smaller than 1.
+     */
+    public Solver(int maxDepth){
+        this(maxDepth, new TranspositionTable(DEFAULT_TABLE_ENTRIES));
+    }
+
+    /**
+     * Create a solver that looks at most maxDepth moves ahead and remembers scores in the given table.
+     * A table can be kept across searches, its entries stay valid.
+     * @param maxDepth number of moves to look ahead, at least 1.
+     * @param table transposition table of the solver.
+     * @throws IllegalArgumentException when maxDepth is smaller than 1.
+     */
+    public Solver(int maxDepth, TranspositionTable table){
+        if(maxDepth < 1){
+            throw new IllegalArgumentException("Depth must be at least 1");
+        }
+        this.maxDepth = maxDepth;
+        this.table = table;
+        prepare(Position.create());
+    }
+
+    /**
+     * Solve the current position of a game.
+     * @param game game to analyse, it is not modified.
+     * @return score and best column for the current player.
+     * @throws IllegalStateException when the game is already over.
+     */
+    public Result solve(ConnectFour game){
+        if(game.getStatus() != ConnectFour.Status.PLAYING){
+            throw new IllegalStateException("The game is over");
+        }
+        return solve(game.getPosition());
+    }
+
+    /**
+     * Solve a position where neither player has won yet.
+     * @param position position to analyse, it is not modified.
+     * @return score and best column for the player to move.
+     * @throws IllegalStateException when the board is full.
+     */
+    public Result solve(Position position){
+        if(position.moves() == position.cells()){
+            throw new IllegalStateException("The board is full");
+        }
+        return searchRoot(position, maxDepth, minScore(position) - 1, maxScore(position) + 1, -1, NO_DEADLINE, null);
+    }
+
+    /**
+     * Search a position to a given depth within a window, for engines driving the search themselves.
+     * @param position position where neither player has won and the board is not full, it is not modified.
+     * @param depth number of moves to look ahead, at least 1.
+     * @param alpha score already guaranteed to the player to move.
+     * @param beta score above which the opponent would avoid this position.
+     * @param firstColumn column index to search first, usually the best one of a shallower search, or -1.
+     * @param deadline {@link System#nanoTime()} at which to give up, or {@link #NO_DEADLINE}.
+     * @param budget budget charged with the nodes visited, checked with the deadline, or null.
+     * @return best column and its score; the score is exact if it is within (alpha, beta), otherwise
+     * it is a bound on the same side as the window and the column is not reliable.
+     * @throws TimeoutException when the deadline passes or the budget is exhausted.
+     */
+    Result searchRoot(Position position, int depth, int alpha, int beta, int firstColumn, long deadline, Budget budget){
+        start(1, deadline);
+        this.budget = budget;
+        prepare(position);
+        try{
+            return root(position, depth, alpha, beta, firstColumn);
+        }finally{
+            finish();
+        }
+    }
+
+    private Result root(Position position, int depth, int alpha, int beta, int firstColumn){
+        int[] order = columnOrder(position.width());
+        for(int col : order){
+            if(position.canPlay(col) && position.isWinningMove(col)){
+                return new Result(winScore(position), col + 1, nodes);
+            }
+        }
+
+        int bestColumn = -1;
+        int best = minScore(position) - 1;
+        Position child = stack[0];
+        for(int i = -1; i < order.length; i++){
+            int col = i < 0 ? firstColumn : order[i];
+            if(col < 0 || (i >= 0 && col == firstColumn) || !position.canPlay(col)){
+                continue;
+            }
+            child.copyFrom(position);
+            child.play(col);
+            int score = -negamax(child, 1, -beta, -alpha, depth - 1);
+            if(score > best || bestColumn < 0){
+                best = score;
+                bestColumn = col;
+            }
+            if(score >= beta){
+                cutoffs++;
+                break;
+            }
+            if(score > alpha){
+                alpha = score;
+            }
+        }
+        return new Result(best, bestColumn + 1, nodes);
+    }
+
+    /**
+     * Score a position within a window, for engines that split the search tree themselves.
+     * @param position position where the player to move has not won yet, it is not modified.
+     * @param alpha score already guaranteed to the player to move.
+     * @param beta score above which the opponent would avoid this position.
+     * @return exact score if it is within (alpha, beta), otherwise a bound on the same side as the window.
+     */
+    int search(Position position, int alpha, int beta){
+        start(0, NO_DEADLINE);
+        this.budget = null;
+        prepare(position);
+        try{
+            return negamax(position, 0, alpha, beta, maxDepth);
+        }finally{
+            finish();
+        }
+    }
+
+    /**
+     * Set where the counts of every search are added. Metrics are off by default.
+     * @param metrics metrics receiving the counts, null to turn them off.
+     */
+    public void setMetrics(EngineMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reset the counters of a new search.
+     */
+    private void start(long nodes, long deadline){
+        this.nodes = nodes;
+        this.cutoffs = 0;
+        this.tableHits = 0;
+        this.tableMisses = 0;
+        this.deadline = deadline;
+        this.started = metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Add the counters of the search just finished or abandoned to the metrics.
+     */
+    private void finish(){
+        if(metrics != null){
+            metrics.recordSearch(nodes, cutoffs, tableHits, tableMisses, System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Tell whether the deadline passed, charging the budget, if any, with the nodes visited since the last check.
+     */
+    private boolean outOfTime(){
+        return System.nanoTime() - deadline >= 0 || budget != null && budget.spendNodes(DEADLINE_CHECK_MASK + 1);
+    }
+
+    /**
+     * Get the number of positions visited by the last search.
+     * @return node count.
+     */
+    long nodes(){
+        return nodes;
+    }
+
+    /**
+     * Score a position where the player to move has not won yet.
+     * @param position position to score.
+     * @param ply index of the position in the stack, one more than its parent.
+     * @param alpha score already guaranteed to the player to move.
+     * @param beta score above which the opponent would avoid this position.
+     * @param depth number of moves still allowed.
+     * @return exact score if it is within (alpha, beta), otherwise a bound on the same side as the window.
+     */
+    private int negamax(Position position, int ply, int alpha, int beta, int depth){
+        if((++nodes & DEADLINE_CHECK_MASK) == 0 && deadline != NO_DEADLINE && outOfTime()){
+            throw TimeoutException.INSTANCE;
+        }
+        int moves = position.moves();
+        int cells = position.cells();
+        if(moves == cells){
+            return 0;
+        }
+        int width = position.width();
+        for(int col = 0; col < width; col++){
+            if(position.canPlay(col) && position.isWinningMove(col)){
+                return winScore(position);
+            }
+        }
+        if(depth == 0){
+            return 0;
+        }
+
+        int max = (cells - 1 - moves) / 2;
+        if(beta > max){
+            beta = max;
+            if(alpha >= beta){
+                return beta;
+            }
+        }
+
+        // a search to the end of the game is as good as any deeper one
+        depth = Math.min(depth, cells - moves);
+        // a position and its mirror have the same score, so they share an entry
+        long key = position.canonicalKey();
+        long entry = table.probe(key);
+        if(entry == TranspositionTable.MISS){
+            tableMisses++;
+        }else{
+            tableHits++;
+        }
+        if(entry != TranspositionTable.MISS && TranspositionTable.depth(entry) >= depth){
+            int stored = TranspositionTable.score(entry);
+            switch(TranspositionTable.bound(entry)){
+                case TranspositionTable.EXACT:
+                    return stored;
+                case TranspositionTable.LOWER:
+                    alpha = Math.max(alpha, stored);
+                    break;
+                default:
+                    beta = Math.min(beta, stored);
+                    break;
+            }
+            if(alpha >= beta){
+                return stored;
+            }
+        }
+        int originalAlpha = alpha;
+
+        Position child = stack[ply];
+        for(int col : COLUMN_ORDERS[width]){
+            if(!position.canPlay(col)){
+                continue;
+            }
+            child.copyFrom(position);
+            child.play(col);
+            int score = -negamax(child, ply + 1, -beta, -alpha, depth - 1);
+            if(score >= beta){
+                cutoffs++;
+                table.store(key, score, TranspositionTable.LOWER, depth);
+                return score;
+            }
+            if(score > alpha){
+                alpha = score;
+            }
+        }
+        table.store(key, alpha, alpha > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER, depth);
+        return alpha;
+    }
+
+    /**
+     * Make sure the stack holds positions of the size of the one about to be searched.
+     */
+    private void prepare(Position position){
+        if(stack != null && stack[0].sameSize(position)){
+            return;
+        }
+        stack = new Position[position.cells() + 1];
+        for(int i = 0; i < stack.length; i++){
+            stack[i] = position.copy();
+        }
+    }
+
+    /**
+     * Columns of a board in the order they are explored, center first.
+     * @param width number of columns, [1, MAX_SIZE] inclusive.
+     * @return column indexes, shared, not to be modified.
+     */
+    static int[] columnOrder(int width){
+        return COLUMN_ORDERS[width];
+    }
+
+    /**
+     * Lowest possible score of a position's board: losing to the opponent's connect()-th checker.
+     * {@link #MIN_SCORE} on the standard board.
+     */
+    static int minScore(Position position){
+        return -position.cells() / 2 - 1 + position.connect();
+    }
+
+    /**
+     * Highest possible score of a position's board: winning with the first player's connect()-th checker.
+     * {@link #MAX_SCORE} on the standard board.
+     */
+    static int maxScore(Position position){
+        return (position.cells() + 1) / 2 + 1 - position.connect();
+    }
+
+    /**
+     * Score of winning with the next checker.
+     */
+    static int winScore(Position position){
+        return (position.cells() + 1 - position.moves()) / 2;
+    }
+}
@@ -0,0 +1,374 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Headless round-robin tournament between bots. Every pair of bots plays the same number of games,
+ * seats alternating so that each bot moves first in half of them, and games run concurrently on a
+ * fixed pool of threads. Bots need not be thread-safe: every thread gets its own instances from the
+ * factories. Every bot has its own {@link Budget} per move, enforced by a {@link BotRunner}, so
+ * strong bots can be given the same cost as weaker ones. A bot returning an unplayable column loses the game.
+ * Games between deterministic bots would all be the same, so each game can start from a few random
+ * moves; the two games of a pair with swapped seats share the same opening, which keeps the
+ * comparison fair.
+ * Example:
+ * <pre>
+ *         Tournament tournament = new Tournament()
+ *                 .addBot("heuristic", Bot::heuristic)
+ *                 .addBot("mcts", () -&gt; Bot.mcts(2000), Budget.ofPlayouts(2000));
+ *         Tournament.Results results = tournament.run(1000, 8);
+ *         System.out.println(results);
+ * </pre>
+ * Running the class plays a tournament between the random, heuristic, Monte Carlo and solver bots:
+ * <pre>
+ *         java Tournament [games per pair] [threads] [random opening plies]
+ * </pre>
+ */
+public class Tournament {
+    /**
+     * Number of games of a pair played by one task; small enough to balance the threads.
+     */
+    private static final int GAMES_PER_TASK = 16;
+
+    private final int rows;
+    private final int columns;
+    private final int connect;
+    private final List<String> names = new ArrayList<>();
+    private final List<Supplier<? extends Bot>> factories = new ArrayList<>();
+    private final List<Budget> budgets = new ArrayList<>();
+    private int openingPlies;
+    private long seed = 0x746F75726E6579L;
+
+    /**
+     * Create a tournament on the standard 6 x 7 board.
+     */
+    public Tournament(){
+        this(Position.HEIGHT, Position.WIDTH, Position.CONNECT);
+    }
+
+    /**
+     * Create a tournament on a board of another size.
+     * @param rows number of rows.
+     * @param columns number of columns.
+     * @param connect number of checkers in a line to win.
+     * @throws IllegalArgumentException when the board size or line length is out of range, see {@link Position#create(int, int, int)}.
+     */
+    public Tournament(int rows, int columns, int connect){
+        Position.create(rows, columns, connect);
+        this.rows = rows;
+        this.columns = columns;
+        this.connect = connect;
+    }
+
+    /**
+     * Add a bot to the tournament, without limits on its moves.
+     * @param name name of the bot in the results.
+     * @param factory creates an instance of the bot for every thread.
+     * @return this tournament.
+     */
+    public Tournament addBot(String name, Supplier<? extends Bot> factory){
+        return addBot(name, factory, Budget.unlimited());
+    }
+
+    /**
+     * Add a bot to the tournament.
+     * @param name name of the bot in the results.
+     * @param factory creates an instance of the bot for every thread.
+     * @param budget budget of every move of the bot.
+     * @return this tournament.
+     */
+    public Tournament addBot(String name, Supplier<? extends Bot> factory, Budget budget){
+        names.add(name);
+        factories.add(factory);
+        budgets.add(budget);
+        return this;
+    }
+
+    /**
+     * Start every game with random moves, none of them winning.
+     * @param plies number of random moves, 0 to start from the empty board.
+     * @return this tournament.
+     */
+    public Tournament setRandomOpening(int plies){
+        this.openingPlies = plies;
+        return this;
+    }
+
+    /**
+     * Set the seed of the random openings, the same seed gives the same openings.
+     * @param seed seed of the openings.
+     * @return this tournament.
+     */
+    public Tournament setSeed(long seed){
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Play every pair of bots against each other.
+     * @param gamesPerPair number of games of every pair, seats alternating.
+     * @param threads number of threads playing games, at least 1.
+     * @return results of the tournament.
+     * @throws IllegalStateException when fewer than two bots were added, or a bot fails.
+     */
+    public Results run(int gamesPerPair, int threads){
+        int bots = names.size();
+        if(bots < 2){
+            throw new IllegalStateException("A tournament needs at least two bots");
+        }
+        ThreadLocal<Bot[]> instances = ThreadLocal.withInitial(() -> {
+            Bot[] local = new Bot[bots];
+            for(int i = 0; i < bots; i++){
+                local[i] = factories.get(i).get();
+            }
+            return local;
+        });
+
+        BotRunner runner = new BotRunner();
+        List<Callable<long[][]>> tasks = new ArrayList<>();
+        for(int a = 0; a < bots; a++){
+            for(int b = a + 1; b < bots; b++){
+                for(int first = 0; first < gamesPerPair; first += GAMES_PER_TASK){
+                    int botA = a;
+                    int botB = b;
+                    int firstGame = first;
+                    int lastGame = Math.min(gamesPerPair, first + GAMES_PER_TASK);
+                    tasks.add(() -> play(runner, instances.get(), botA, botB, firstGame, lastGame));
+                }
+            }
+        }
+
+        long[][] outcomes = new long[bots][bots * 3];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try{
+            for(Future<long[][]> result : pool.invokeAll(tasks)){
+                long[][] counts = result.get();
+                for(int i = 0; i < bots; i++){
+                    for(int j = 0; j < counts[i].length; j++){
+                        outcomes[i][j] += counts[i][j];
+                    }
+                }
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tournament interrupted", e);
+        }catch(ExecutionException e){
+            throw new IllegalStateException("A bot failed", e.getCause());
+        }finally{
+            pool.shutdown();
+            runner.close();
+        }
+        return new Results(names.toArray(new String[0]), outcomes, System.nanoTime() - start);
+    }
+
+    /**
+     * Play games [firstGame, lastGame) of a pair. Bot a moves first in even games.
+     * @return outcome counts, see {@link Results}.
+     */
+    private long[][] play(BotRunner runner, Bot[] bots, int a, int b, int firstGame, int lastGame){
+        long[][] counts = new long[bots.length][bots.length * 3];
+        for(int game = firstGame; game < lastGame; game++){
+            boolean aFirst = (game & 1) == 0;
+            int first = aFirst ? a : b;
+            int second = aFirst ? b : a;
+            ConnectFour.Status status = play(runner, bots, first, second, game / 2);
+            if(status == ConnectFour.Status.DRAW){
+                counts[first][second * 3 + 1]++;
+                counts[second][first * 3 + 1]++;
+            }else{
+                int winner = status == ConnectFour.Status.PLAYER_1_WINS ? first : second;
+                int loser = winner == first ? second : first;
+                counts[winner][loser * 3]++;
+                counts[loser][winner * 3 + 2]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Play one game to the end.
+     * @param first index of the bot moving first.
+     * @param second index of the bot moving second.
+     * @param opening index of the random opening.
+     * @return final status of the game.
+     */
+    private ConnectFour.Status play(BotRunner runner, Bot[] bots, int first, int second, int opening){
+        ConnectFour game = new ConnectFour("1", "2", rows, columns, connect);
+        playOpening(game, new SplittableRandom(seed + opening));
+        while(game.getStatus() == ConnectFour.Status.PLAYING){
+            Position position = game.getPosition();
+            boolean firstToMove = (position.moves() & 1) == 0;
+            int bot = firstToMove ? first : second;
+            try{
+                game.makeMove(runner.chooseColumn(bots[bot], position, budgets.get(bot)) + 1);
+            }catch(IllegalArgumentException e){
+                // an unplayable column forfeits the game
+                return firstToMove ? ConnectFour.Status.PLAYER_2_WINS : ConnectFour.Status.PLAYER_1_WINS;
+            }
+        }
+        return game.getStatus();
+    }
+
+    /**
+     * Play the random opening moves, skipping columns that are full or would win.
+     */
+    private void playOpening(ConnectFour game, SplittableRandom random){
+        Position position = game.getPosition();
+        int[] candidates = new int[columns];
+        for(int ply = 0; ply < openingPlies; ply++){
+            int count = 0;
+            for(int col = 0; col < columns; col++){
+                if(position.canPlay(col) && !position.isWinningMove(col)){
+                    candidates[count++] = col;
+                }
+            }
+            if(count == 0 || position.moves() + 1 == position.cells()){
+                return;
+            }
+            int col = candidates[random.nextInt(count)];
+            position.play(col);
+            game.makeMove(col + 1);
+        }
+    }
+
+    /**
+     * Outcome of a tournament: wins, draws and losses of every bot against every other bot.
+     */
+    public static class Results {
+        private final String[] names;
+        /**
+         * For bot i, three counts per opponent j: wins, draws and losses of i against j.
+         */
+        private final long[][] outcomes;
+        private final long nanos;
+
+        Results(String[] names, long[][] outcomes, long nanos){
+            this.names = names;
+            this.outcomes = outcomes;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Get the names of the bots, in the order they were added.
+         * @return names of the bots.
+         */
+        public String[] getNames(){
+            return names.clone();
+        }
+
+        /**
+         * Get the number of games a bot won against another.
+         * @param bot index of the bot, in the order bots were added.
+         * @param opponent index of the opponent.
+         * @return number of wins.
+         */
+        public long getWins(int bot, int opponent){
+            return outcomes[bot][opponent * 3];
+        }
+
+        /**
+         * Get the number of draws between two bots.
+         * @param bot index of the bot, in the order bots were added.
+         * @param opponent index of the opponent.
+         * @return number of draws.
+         */
+        public long getDraws(int bot, int opponent){
+            return outcomes[bot][opponent * 3 + 1];
+        }
+
+        /**
+         * Get the number of games a bot lost against another.
+         * @param bot index of the bot, in the order bots were added.
+         * @param opponent index of the opponent.
+         * @return number of losses.
+         */
+        public long getLosses(int bot, int opponent){
+            return outcomes[bot][opponent * 3 + 2];
+        }
+
+        /**
+         * Get the number of games played in the tournament.
+         * @return number of games.
+         */
+        public long getGames(){
+            long games = 0;
+            for(long[] row : outcomes){
+                for(long count : row){
+                    games += count;
+                }
+            }
+            // every game is counted once by each of its two bots
+            return games / 2;
+        }
+
+        /**
+         * Get the speed of the tournament.
+         * @return games per second of wall-clock time.
+         */
+        public double getGamesPerSecond(){
+            return nanos == 0 ? 0 : getGames() * 1e9 / nanos;
+        }
+
+        /**
+         * Get a table of the results: one row per bot with its wins-draws-losses against every
+         * column's bot and its totals, then the number of games and their speed.
+         * @return multi-line table.
+         */
+        @Override
+        public String toString(){
+            int width = 14;
+            for(String name : names){
+                width = Math.max(width, name.length() + 2);
+            }
+            StringBuilder table = new StringBuilder(String.format("%-" + width + "s", ""));
+            for(String name : names){
+                table.append(String.format("%" + width + "s", name));
+            }
+            table.append(String.format("%" + width + "s%n", "total W-D-L"));
+            for(int i = 0; i < names.length; i++){
+                table.append(String.format("%-" + width + "s", names[i]));
+                long wins = 0;
+                long draws = 0;
+                long losses = 0;
+                for(int j = 0; j < names.length; j++){
+                    if(i == j){
+                        table.append(String.format("%" + width + "s", "-"));
+                        continue;
+                    }
+                    wins += getWins(i, j);
+                    draws += getDraws(i, j);
+                    losses += getLosses(i, j);
+                    table.append(String.format("%" + width + "s", getWins(i, j) + "-" + getDraws(i, j) + "-" + getLosses(i, j)));
+                }
+                table.append(String.format("%" + width + "s%n", wins + "-" + draws + "-" + losses));
+            }
+            table.append(String.format("%d games in %.1f s, %.1f games/s", getGames(), nanos / 1e9, getGamesPerSecond()));
+            return table.toString();
+        }
+    }
+
+    /**
+     * Play a tournament between the random, heuristic, Monte Carlo and solver bots and print the table.
+     * @param args games per pair, number of threads and random opening plies.
+     */
+    public static void main(String[] args){
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int opening = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        Tournament tournament = new Tournament()
+                .setRandomOpening(opening)
+                .addBot("random", () -> Bot.random(ThreadLocalRandom.current().nextLong()))
+                .addBot("heuristic", Bot::heuristic)
+                .addBot("mcts-2000", () -> Bot.mcts(2000), Budget.ofPlayouts(2000))
+                .addBot("solver-10ms", Bot::solver, Budget.ofMillis(10));
+        System.out.println(tournament.run(games, threads));
+    }
+}
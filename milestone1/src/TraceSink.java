@@ -0,0 +1,66 @@
+/**
+ * Receiver of trace events emitted by the game core. Events are passed as primitives so that
+ * recording one never allocates; what the two arguments mean depends on the event.
+ * The default sink is {@link #NONE}, which drops everything, so tracing costs a single
+ * inlined call when it is turned off.
+ * Example:
+ * <pre>
+ *         RingBufferTraceSink trace = new RingBufferTraceSink(1024);
+ *         ConnectFour game = new ConnectFour("Lisa", "Luna");
+ *         game.setTraceSink(trace);
+ *         game.makeMove(4);
+ *         trace.copyTo((event, time, a, b) -&gt; System.out.println(TraceSink.eventName(event) + " " + a + " " + b));
+ * </pre>
+ */
+public interface TraceSink {
+    /**
+     * A checker was dropped. a is the column, counted from 1, b is the id of the player who dropped it.
+     */
+    int MOVE = 1;
+    /**
+     * The lines through the last checker were checked. a is the column, b is 1 if they make a winning line, 0 otherwise.
+     */
+    int WIN_CHECK = 2;
+    /**
+     * The game ended. a is the ordinal of the final {@link ConnectFour.Status}, b is the number of checkers played.
+     */
+    int GAME_END = 3;
+    /**
+     * A move was taken back. a is the column, counted from 1, b is the id of the player who had dropped the checker.
+     */
+    int UNDO = 4;
+
+    /**
+     * Sink that ignores every event.
+     */
+    TraceSink NONE = (event, time, a, b) -> { };
+
+    /**
+     * Record one event.
+     * @param event event type, one of the constants of this interface.
+     * @param time {@link System#nanoTime()} when the event happened, or 0 if the emitter did not read the clock.
+     * @param a first argument of the event.
+     * @param b second argument of the event.
+     */
+    void record(int event, long time, long a, long b);
+
+    /**
+     * Get a readable name of an event type.
+     * @param event event type, one of the constants of this interface.
+     * @return name of the event.
+     */
+    static String eventName(int event){
+        switch(event){
+            case MOVE:
+                return "MOVE";
+            case WIN_CHECK:
+                return "WIN_CHECK";
+            case GAME_END:
+                return "GAME_END";
+            case UNDO:
+                return "UNDO";
+            default:
+                return "EVENT_" + event;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed-size transposition table remembering the scores of positions already searched.
+ * Entries live off-heap in direct buffers allocated once, so even tables with tens of millions
+ * of entries add nothing for the garbage collector to trace. Every entry takes 16 bytes: the
+ * position key and a packed word holding the score, the kind of bound and the search depth.
+ * When two positions map to the same slot the entry searched deeper is kept.
+ * The table can be shared by searches running on several threads without locking: the key is
+ * stored xor-ed with the data word, so an entry torn by two concurrent writers no longer matches
+ * any key and reads as a miss.
+ * Example:
+ * <pre>
+ *         TranspositionTable table = TranspositionTable.ofMegabytes(256);
+ *         Solver solver = new Solver(42, table);
+ * </pre>
+ */
+public class TranspositionTable {
+    /**
+     * Returned by {@link #probe(long)} when the table has no entry for a key.
+     */
+    public static final long MISS = 0;
+    /**
+     * The stored score is the exact score of the position.
+     */
+    public static final int EXACT = 1;
+    /**
+     * The stored score is a lower bound of the score of the position.
+     */
+    public static final int LOWER = 2;
+    /**
+     * The stored score is an upper bound of the score of the position.
+     */
+    public static final int UPPER = 3;
+
+    private static final int ENTRY_BYTES = 16;
+    /**
+     * Entries per direct buffer; a single buffer cannot exceed 2 GB.
+     */
+    private static final int CHUNK_SHIFT = 26;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+    private static final long VALID = 1L << 32;
+
+    private final long size;
+    private final ByteBuffer[] chunks;
+
+    /**
+     * Create a table holding a fixed number of entries.
+     * @param entries number of entries, at least 1.
+     * @throws IllegalArgumentException when entries is smaller than 1.
+     */
+    public TranspositionTable(long entries){
+        if(entries < 1){
+            throw new IllegalArgumentException("The table needs at least one entry");
+        }
+        this.size = entries;
+        int count = (int) ((entries + CHUNK_MASK) >>> CHUNK_SHIFT);
+        chunks = new ByteBuffer[count];
+        for(int i = 0; i < count; i++){
+            long chunkEntries = Math.min(entries - ((long) i << CHUNK_SHIFT), 1L << CHUNK_SHIFT);
+            chunks[i] = ByteBuffer.allocateDirect((int) (chunkEntries * ENTRY_BYTES)).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Create a table using about the given amount of off-heap memory.
+     * @param megabytes memory of the table in MB, at least 1.
+     * @return the new table.
+     */
+    public static TranspositionTable ofMegabytes(int megabytes){
+        return new TranspositionTable(((long) megabytes << 20) / ENTRY_BYTES);
+    }
+
+    /**
+     * Get the number of entries of the table.
+     * @return number of entries.
+     */
+    public long size(){
+        return size;
+    }
+
+    /**
+     * Look a position up.
+     * @param key key of the position, see {@link Position#key()}.
+     * @return packed entry to read with {@link #score(long)}, {@link #bound(long)} and {@link #depth(long)},
+     * or {@link #MISS} if the position is not in the table.
+     */
+    public long probe(long key){
+        long index = index(key);
+        ByteBuffer chunk = chunks[(int) (index >>> CHUNK_SHIFT)];
+        int offset = (int) (index & CHUNK_MASK) * ENTRY_BYTES;
+        long data = chunk.getLong(offset + 8);
+        if((data & VALID) == 0 || (chunk.getLong(offset) ^ data) != key){
+            return MISS;
+        }
+        return data;
+    }
+
+    /**
+     * Store the result of a search. An entry for another position is only replaced if it was
+     * searched at most as deep as this one.
+     * @param key key of the position, see {@link Position#key()}.
+     * @param score score of the position, within a byte.
+     * @param bound {@link #EXACT}, {@link #LOWER} or {@link #UPPER}.
+     * @param depth number of moves searched below the position, [0, 255] inclusive.
+     */
+    public void store(long key, int score, int bound, int depth){
+        long index = index(key);
+        ByteBuffer chunk = chunks[(int) (index >>> CHUNK_SHIFT)];
+        int offset = (int) (index & CHUNK_MASK) * ENTRY_BYTES;
+        long old = chunk.getLong(offset + 8);
+        if((old & VALID) != 0 && depth(old) > depth && (chunk.getLong(offset) ^ old) != key){
+            return;
+        }
+        long data = VALID | (long) depth << 16 | (long) bound << 8 | (score & 0xFF);
+        chunk.putLong(offset, key ^ data);
+        chunk.putLong(offset + 8, data);
+    }
+
+    /**
+     * Remove every entry.
+     */
+    public void clear(){
+        for(ByteBuffer chunk : chunks){
+            for(int offset = 0; offset < chunk.capacity(); offset += 8){
+                chunk.putLong(offset, 0);
+            }
+        }
+    }
+
+    /**
+     * Get the score of an entry.
+     * @param entry packed entry returned by {@link #probe(long)}.
+     * @return stored score.
+     */
+    public static int score(long entry){
+        return (byte) entry;
+    }
+
+    /**
+     * Get the kind of bound of an entry.
+     * @param entry packed entry returned by {@link #probe(long)}.
+     * @return {@link #EXACT}, {@link #LOWER} or {@link #UPPER}.
+     */
+    public static int bound(long entry){
+        return (int) (entry >>> 8) & 0xFF;
+    }
+
+    /**
+     * Get the search depth of an entry.
+     * @param entry packed entry returned by {@link #probe(long)}.
+     * @return number of moves searched below the position.
+     */
+    public static int depth(long entry){
+        return (int) (entry >>> 16) & 0xFF;
+    }
+
+    /**
+     * Spread keys over the table; position keys are far from uniform.
+     */
+    private long index(long key){
+        long hash = key * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 29;
+        return Long.remainderUnsigned(hash, size);
+    }
+}